@@ -0,0 +1,155 @@
+// Copyright 2017 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.videoplayer;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import io.flutter.plugin.common.EventChannel;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An implementation of {@link EventChannel.EventSink} which can wrap an underlying sink.
+ *
+ * <p>Events may be written from any thread. They are queued without locking and delivered on the
+ * main thread, with a single {@link Handler} post for everything written until that post runs.
+ * Events are queued until the delegate event sink is set with setDelegate.
+ *
+ * <p>Events that only carry the latest value of something, such as {@code bufferingUpdate} or
+ * download progress, are coalesced: an older pending one is dropped when a newer one of the same
+ * kind is written. All other events are delivered in order.
+ *
+ * <p>setDelegate must be called on the main thread.
+ */
+final class BatchingEventSink implements EventChannel.EventSink {
+
+    private static final Set<String> COALESCABLE_EVENTS =
+            new HashSet<>(Arrays.asList(
+                    "bufferingUpdate", "positionUpdate", "downloadState", "metrics", "liveOffset"));
+
+    private final ConcurrentLinkedQueue<PendingEvent> eventQueue = new ConcurrentLinkedQueue<>();
+    private final ConcurrentMap<String, PendingEvent> latestCoalescableEvents = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable flushRunnable = this::flush;
+    private EventChannel.EventSink delegate;
+    private volatile boolean done = false;
+
+    void setDelegate(EventChannel.EventSink delegate) {
+        this.delegate = delegate;
+        scheduleFlush();
+    }
+
+    @Override
+    public void endOfStream() {
+        enqueue(new EndOfStreamEvent());
+        done = true;
+    }
+
+    @Override
+    public void error(String code, String message, Object details) {
+        enqueue(new ErrorEvent(code, message, details));
+    }
+
+    @Override
+    public void success(Object event) {
+        enqueue(event);
+    }
+
+    private void enqueue(Object event) {
+        if (done) {
+            return;
+        }
+        PendingEvent pendingEvent = new PendingEvent(event, coalescingKey(event));
+        if (pendingEvent.coalescingKey != null) {
+            latestCoalescableEvents.put(pendingEvent.coalescingKey, pendingEvent);
+        }
+        eventQueue.add(pendingEvent);
+        scheduleFlush();
+    }
+
+    private static String coalescingKey(Object event) {
+        if (!(event instanceof Map)) {
+            return null;
+        }
+        Object name = ((Map<?, ?>) event).get("event");
+        return COALESCABLE_EVENTS.contains(name) ? (String) name : null;
+    }
+
+    private boolean isSuperseded(PendingEvent pendingEvent) {
+        return pendingEvent.coalescingKey != null
+                && latestCoalescableEvents.get(pendingEvent.coalescingKey) != pendingEvent;
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            handler.post(flushRunnable);
+        }
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+        if (delegate == null) {
+            // Nobody is listening yet, only drop what newer events made obsolete.
+            Iterator<PendingEvent> iterator = eventQueue.iterator();
+            while (iterator.hasNext()) {
+                if (isSuperseded(iterator.next())) {
+                    iterator.remove();
+                }
+            }
+            return;
+        }
+        PendingEvent pendingEvent;
+        while (delegate != null && (pendingEvent = eventQueue.poll()) != null) {
+            if (pendingEvent.coalescingKey != null
+                    && !latestCoalescableEvents.remove(pendingEvent.coalescingKey, pendingEvent)) {
+                continue;
+            }
+            Object event = pendingEvent.event;
+            if (event instanceof EndOfStreamEvent) {
+                delegate.endOfStream();
+            } else if (event instanceof ErrorEvent) {
+                ErrorEvent errorEvent = (ErrorEvent) event;
+                delegate.error(errorEvent.code, errorEvent.message, errorEvent.details);
+            } else {
+                delegate.success(event);
+            }
+        }
+    }
+
+    private static class PendingEvent {
+        final Object event;
+        final String coalescingKey;
+
+        PendingEvent(Object event, String coalescingKey) {
+            this.event = event;
+            this.coalescingKey = coalescingKey;
+        }
+    }
+
+    private static class EndOfStreamEvent {
+    }
+
+    private static class ErrorEvent {
+        String code;
+        String message;
+        Object details;
+
+        ErrorEvent(String code, String message, Object details) {
+            this.code = code;
+            this.message = message;
+            this.details = details;
+        }
+    }
+}
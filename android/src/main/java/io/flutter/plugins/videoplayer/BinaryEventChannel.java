@@ -0,0 +1,136 @@
+// Copyright 2017 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.videoplayer;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.android.exoplayer2.util.Util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import io.flutter.plugin.common.BasicMessageChannel;
+import io.flutter.plugin.common.BinaryCodec;
+import io.flutter.plugin.common.BinaryMessenger;
+
+/**
+ * Sends the frequent player events as fixed-layout binary records instead of maps.
+ *
+ * <p>Every record starts with a one byte type and the eight byte texture id, followed by the
+ * payload of that type, all little-endian. Records written from any thread are appended to one
+ * buffer, which is sent as a single message per main looper post. The layouts must be kept in sync
+ * with {@code _BinaryEvents} in lib/video_player.dart.
+ *
+ * <p>Initialization, completion and errors are records too, so they keep their order relative to
+ * the frequent events. The remaining map events of a player, such as playlist changes and metrics,
+ * are not ordered with the records.
+ */
+final class BinaryEventChannel {
+
+    static final byte TYPE_POSITION_UPDATE = 1; // int64 position, int64 buffered position
+    static final byte TYPE_BUFFERING_UPDATE = 2; // int64 buffered position
+    static final byte TYPE_BUFFERING_START = 3;
+    static final byte TYPE_BUFFERING_END = 4;
+    static final byte TYPE_PLAY_STATE_CHANGED = 5; // uint8 is playing
+    static final byte TYPE_RESOLUTION_CHANGE = 6; // int32 index, int32 bitrate, uint8 reason
+    static final byte TYPE_DOWNLOAD_STATE = 7; // int32 state, float64 progress
+    static final byte TYPE_INITIALIZED = 8; // int64 duration, int32 width, int32 height
+    static final byte TYPE_COMPLETED = 9;
+    static final byte TYPE_ERROR = 10; // int32 length, UTF-8 message
+
+    private static final int HEADER_SIZE = 1 + 8;
+
+    private final BasicMessageChannel<ByteBuffer> channel;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable flushRunnable = this::flush;
+    private ByteBuffer pending = ByteBuffer.allocate(512).order(ByteOrder.LITTLE_ENDIAN);
+    private boolean flushScheduled;
+
+    BinaryEventChannel(BinaryMessenger messenger) {
+        channel = new BasicMessageChannel<>(messenger, "flutter.io/videoPlayer/binaryEvents", BinaryCodec.INSTANCE);
+    }
+
+    synchronized void writePositionUpdate(long textureId, long position, long bufferedPosition) {
+        begin(textureId, TYPE_POSITION_UPDATE, 16);
+        pending.putLong(position).putLong(bufferedPosition);
+    }
+
+    synchronized void writeBufferingUpdate(long textureId, long bufferedPosition) {
+        begin(textureId, TYPE_BUFFERING_UPDATE, 8);
+        pending.putLong(bufferedPosition);
+    }
+
+    synchronized void writeBufferingStart(long textureId) {
+        begin(textureId, TYPE_BUFFERING_START, 0);
+    }
+
+    synchronized void writeBufferingEnd(long textureId) {
+        begin(textureId, TYPE_BUFFERING_END, 0);
+    }
+
+    synchronized void writePlayStateChanged(long textureId, boolean isPlaying) {
+        begin(textureId, TYPE_PLAY_STATE_CHANGED, 1);
+        pending.put((byte) (isPlaying ? 1 : 0));
+    }
+
+    synchronized void writeResolutionChange(long textureId, int index, int bitrate, int reason) {
+        begin(textureId, TYPE_RESOLUTION_CHANGE, 9);
+        // Custom selection reasons don't fit a byte and are reported as unknown.
+        pending.putInt(index).putInt(bitrate).put((byte) (reason <= Byte.MAX_VALUE ? reason : 0));
+    }
+
+    synchronized void writeDownloadState(long textureId, int state, double progress) {
+        begin(textureId, TYPE_DOWNLOAD_STATE, 12);
+        pending.putInt(state).putDouble(progress);
+    }
+
+    synchronized void writeInitialized(long textureId, long duration, int width, int height) {
+        begin(textureId, TYPE_INITIALIZED, 16);
+        pending.putLong(duration).putInt(width).putInt(height);
+    }
+
+    synchronized void writeCompleted(long textureId) {
+        begin(textureId, TYPE_COMPLETED, 0);
+    }
+
+    synchronized void writeError(long textureId, String message) {
+        byte[] bytes = Util.getUtf8Bytes(message);
+        begin(textureId, TYPE_ERROR, 4 + bytes.length);
+        pending.putInt(bytes.length).put(bytes);
+    }
+
+    private void begin(long textureId, byte type, int payloadSize) {
+        int required = HEADER_SIZE + payloadSize;
+        if (pending.remaining() < required) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + required))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+        pending.put(type).putLong(textureId);
+        if (!flushScheduled) {
+            flushScheduled = true;
+            handler.post(flushRunnable);
+        }
+    }
+
+    private void flush() {
+        ByteBuffer message;
+        synchronized (this) {
+            flushScheduled = false;
+            if (pending.position() == 0) {
+                return;
+            }
+            // The engine needs a direct buffer.
+            pending.flip();
+            message = ByteBuffer.allocateDirect(pending.remaining());
+            message.put(pending);
+            pending.clear();
+        }
+        channel.send(message);
+    }
+}
@@ -0,0 +1,110 @@
+// Copyright 2017 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.videoplayer;
+
+import com.google.android.exoplayer2.DefaultLoadControl;
+import com.google.android.exoplayer2.LoadControl;
+import com.google.android.exoplayer2.Renderer;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.trackselection.ExoTrackSelection;
+import com.google.android.exoplayer2.upstream.Allocator;
+
+/**
+ * A {@link LoadControl} that buffers as its {@link DefaultLoadControl} allows, but stops loading
+ * once its player holds more than its share of the {@link BufferBudget}.
+ *
+ * <p>Loading always continues until the buffer needed to start playback is reached, so that a
+ * player starved by the budget can't get stuck. A trimmed load control loads only that much until
+ * its player plays again.
+ */
+final class BudgetedLoadControl implements LoadControl {
+
+    private final DefaultLoadControl delegate;
+    private final BufferBudget budget;
+    private final long minBufferUs;
+    private volatile boolean playing;
+    private volatile boolean trimmed;
+
+    /**
+     * @param minBufferMs the buffer {@code delegate} needs to start or resume playback, which is
+     *                    never withheld by the budget.
+     */
+    BudgetedLoadControl(DefaultLoadControl delegate, BufferBudget budget, int minBufferMs) {
+        this.delegate = delegate;
+        this.budget = budget;
+        this.minBufferUs = minBufferMs * 1000L;
+    }
+
+    void setPlaying(boolean playing) {
+        this.playing = playing;
+        if (playing) {
+            trimmed = false;
+        }
+    }
+
+    /** Stops loading beyond the buffer needed to start playback, until playing again. */
+    void setTrimmed(boolean trimmed) {
+        this.trimmed = trimmed;
+    }
+
+    boolean isPlaying() {
+        return playing;
+    }
+
+    @Override
+    public void onPrepared() {
+        delegate.onPrepared();
+    }
+
+    @Override
+    public void onTracksSelected(Renderer[] renderers, TrackGroupArray trackGroups, ExoTrackSelection[] trackSelections) {
+        delegate.onTracksSelected(renderers, trackGroups, trackSelections);
+    }
+
+    @Override
+    public void onStopped() {
+        delegate.onStopped();
+    }
+
+    @Override
+    public void onReleased() {
+        delegate.onReleased();
+    }
+
+    @Override
+    public Allocator getAllocator() {
+        return delegate.getAllocator();
+    }
+
+    @Override
+    public long getBackBufferDurationUs() {
+        return delegate.getBackBufferDurationUs();
+    }
+
+    @Override
+    public boolean retainBackBufferFromKeyframe() {
+        return delegate.retainBackBufferFromKeyframe();
+    }
+
+    @Override
+    public boolean shouldContinueLoading(long playbackPositionUs, long bufferedDurationUs, float playbackSpeed) {
+        if (!delegate.shouldContinueLoading(playbackPositionUs, bufferedDurationUs, playbackSpeed)) {
+            return false;
+        }
+        if (bufferedDurationUs < minBufferUs) {
+            return true;
+        }
+        if (trimmed) {
+            return false;
+        }
+        long share = budget.shareOf(this);
+        return share == BufferBudget.UNLIMITED || getAllocator().getTotalBytesAllocated() < share;
+    }
+
+    @Override
+    public boolean shouldStartPlayback(long bufferedDurationUs, float playbackSpeed, boolean rebuffering, long targetLiveOffsetUs) {
+        return delegate.shouldStartPlayback(bufferedDurationUs, playbackSpeed, rebuffering, targetLiveOffsetUs);
+    }
+}
@@ -0,0 +1,59 @@
+// Copyright 2017 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.videoplayer;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A plugin-wide budget for the media buffers of all live players.
+ *
+ * <p>The budget is split across the registered {@link BudgetedLoadControl}s by weight: a playing
+ * player weighs {@link #PLAYING_WEIGHT} times as much as a paused one, so the video the user
+ * watches keeps most of the memory while previews keep only a little.
+ *
+ * <p>Players register on the main thread; shares are read from the playback threads.
+ */
+final class BufferBudget {
+
+    /** No budget, every player buffers as its own load control allows. */
+    static final long UNLIMITED = 0;
+
+    static final int PLAYING_WEIGHT = 4;
+
+    private final Set<BudgetedLoadControl> loadControls =
+            Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private volatile long totalBytes = UNLIMITED;
+
+    void setTotalBytes(long totalBytes) {
+        this.totalBytes = Math.max(UNLIMITED, totalBytes);
+    }
+
+    void register(BudgetedLoadControl loadControl) {
+        loadControls.add(loadControl);
+    }
+
+    void unregister(BudgetedLoadControl loadControl) {
+        loadControls.remove(loadControl);
+    }
+
+    /** The bytes {@code loadControl} may hold, or {@link #UNLIMITED}. */
+    long shareOf(BudgetedLoadControl loadControl) {
+        long totalBytes = this.totalBytes;
+        if (totalBytes == UNLIMITED) {
+            return UNLIMITED;
+        }
+        int totalWeight = 0;
+        for (BudgetedLoadControl registered : loadControls) {
+            totalWeight += weightOf(registered);
+        }
+        return totalBytes * weightOf(loadControl) / Math.max(1, totalWeight);
+    }
+
+    private static int weightOf(BudgetedLoadControl loadControl) {
+        return loadControl.isPlaying() ? PLAYING_WEIGHT : 1;
+    }
+}
@@ -0,0 +1,86 @@
+// Copyright 2017 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.videoplayer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Limits how many players hold decoders at once.
+ *
+ * <p>When a player becomes active and the limit is exceeded, another active player is suspended:
+ * one that is off-screen and paused if possible, then one that is paused, then any other, the least
+ * recently used first. A suspended player released its codecs and buffers and becomes active again
+ * through {@link #activate(Client)} when it is used.
+ *
+ * <p>All calls must be done on the main thread.
+ */
+final class DecoderGovernor {
+
+    /** No limit, every player keeps its decoders. */
+    static final int UNLIMITED = 0;
+
+    interface Client {
+        boolean isPlaying();
+
+        boolean isVisible();
+
+        /** Releases the decoders and buffers, keeping the position, track selection and surface. */
+        void suspend();
+    }
+
+    /** The active clients, least recently used first. */
+    private final List<Client> activeClients = new ArrayList<>();
+    private int maxActive = UNLIMITED;
+
+    void setMaxActive(int maxActive) {
+        this.maxActive = Math.max(UNLIMITED, maxActive);
+        enforce(null);
+    }
+
+    /** Marks {@code client} as active and most recently used, suspending others over the limit. */
+    void activate(Client client) {
+        activeClients.remove(client);
+        activeClients.add(client);
+        enforce(client);
+    }
+
+    void remove(Client client) {
+        activeClients.remove(client);
+    }
+
+    private void enforce(Client keep) {
+        while (maxActive != UNLIMITED && activeClients.size() > maxActive) {
+            Client victim = findVictim(keep);
+            if (victim == null) {
+                return;
+            }
+            activeClients.remove(victim);
+            victim.suspend();
+        }
+    }
+
+    private Client findVictim(Client keep) {
+        Client paused = null;
+        Client any = null;
+        for (Client client : activeClients) {
+            if (client == keep) {
+                continue;
+            }
+            if (!client.isPlaying()) {
+                if (!client.isVisible()) {
+                    return client;
+                }
+                if (paused == null) {
+                    paused = client;
+                }
+            }
+            if (any == null) {
+                any = client;
+            }
+        }
+        return paused != null ? paused : any;
+    }
+}
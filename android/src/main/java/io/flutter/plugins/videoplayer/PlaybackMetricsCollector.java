@@ -0,0 +1,165 @@
+// Copyright 2017 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.videoplayer;
+
+import android.os.SystemClock;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.analytics.AnalyticsListener;
+import com.google.android.exoplayer2.source.LoadEventInfo;
+import com.google.android.exoplayer2.source.MediaLoadData;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Collects the quality of experience of one player's playback from its analytics callbacks.
+ *
+ * <p>Rebuffers are the times playback waited for media after the first frame, while it was meant to
+ * play. Buffering after a seek doesn't count. Callbacks arrive on the main thread, where
+ * {@link #getMetrics()} must be called too.
+ */
+final class PlaybackMetricsCollector implements AnalyticsListener {
+
+    private final long createdAtMs = SystemClock.elapsedRealtime();
+    private long timeToFirstFrameMs = C.TIME_UNSET;
+    private boolean playWhenReady;
+    private boolean seeking;
+    private long rebufferStartMs = C.TIME_UNSET;
+    private int rebufferCount;
+    private long rebufferDurationMs;
+    private long playingSinceMs = C.TIME_UNSET;
+    private long playingDurationMs;
+    private int droppedFrames;
+    private String videoDecoderName;
+    private long videoDecoderInitMs = C.TIME_UNSET;
+    private long bandwidthEstimate;
+    private long bytesLoaded;
+    private int bitrate = Format.NO_VALUE;
+    private int bitrateSwitches;
+
+    @Override
+    public void onRenderedFirstFrame(@NotNull EventTime eventTime, @NotNull Object output, long renderTimeMs) {
+        if (timeToFirstFrameMs == C.TIME_UNSET) {
+            timeToFirstFrameMs = eventTime.realtimeMs - createdAtMs;
+        }
+    }
+
+    @Override
+    public void onPlayWhenReadyChanged(@NotNull EventTime eventTime, boolean playWhenReady, int reason) {
+        this.playWhenReady = playWhenReady;
+        if (!playWhenReady) {
+            endRebuffer(eventTime.realtimeMs);
+        }
+    }
+
+    @Override
+    public void onIsPlayingChanged(@NotNull EventTime eventTime, boolean isPlaying) {
+        if (isPlaying) {
+            playingSinceMs = eventTime.realtimeMs;
+        } else if (playingSinceMs != C.TIME_UNSET) {
+            playingDurationMs += eventTime.realtimeMs - playingSinceMs;
+            playingSinceMs = C.TIME_UNSET;
+        }
+    }
+
+    @Override
+    public void onPositionDiscontinuity(
+            @NotNull EventTime eventTime,
+            @NotNull Player.PositionInfo oldPosition,
+            @NotNull Player.PositionInfo newPosition,
+            int reason) {
+        if (reason == Player.DISCONTINUITY_REASON_SEEK) {
+            seeking = true;
+        }
+    }
+
+    @Override
+    public void onPlaybackStateChanged(@NotNull EventTime eventTime, int state) {
+        if (state == Player.STATE_BUFFERING) {
+            if (!seeking && playWhenReady && timeToFirstFrameMs != C.TIME_UNSET
+                    && rebufferStartMs == C.TIME_UNSET) {
+                rebufferStartMs = eventTime.realtimeMs;
+                rebufferCount++;
+            }
+        } else {
+            seeking = false;
+            endRebuffer(eventTime.realtimeMs);
+        }
+    }
+
+    @Override
+    public void onDroppedVideoFrames(@NotNull EventTime eventTime, int droppedFrames, long elapsedMs) {
+        this.droppedFrames += droppedFrames;
+    }
+
+    @Override
+    public void onVideoDecoderInitialized(
+            @NotNull EventTime eventTime,
+            @NotNull String decoderName,
+            long initializedTimestampMs,
+            long initializationDurationMs) {
+        videoDecoderName = decoderName;
+        videoDecoderInitMs = initializationDurationMs;
+    }
+
+    @Override
+    public void onBandwidthEstimate(
+            @NotNull EventTime eventTime, int totalLoadTimeMs, long totalBytesLoaded, long bitrateEstimate) {
+        bandwidthEstimate = bitrateEstimate;
+    }
+
+    @Override
+    public void onLoadCompleted(
+            @NotNull EventTime eventTime, @NotNull LoadEventInfo loadEventInfo, @NotNull MediaLoadData mediaLoadData) {
+        bytesLoaded += loadEventInfo.bytesLoaded;
+    }
+
+    @Override
+    public void onDownstreamFormatChanged(@NotNull EventTime eventTime, @NotNull MediaLoadData mediaLoadData) {
+        Format format = mediaLoadData.trackFormat;
+        if (format == null || format.height == Format.NO_VALUE || format.bitrate == Format.NO_VALUE) {
+            return;
+        }
+        if (bitrate != Format.NO_VALUE && bitrate != format.bitrate) {
+            bitrateSwitches++;
+        }
+        bitrate = format.bitrate;
+    }
+
+    private void endRebuffer(long nowMs) {
+        if (rebufferStartMs != C.TIME_UNSET) {
+            rebufferDurationMs += nowMs - rebufferStartMs;
+            rebufferStartMs = C.TIME_UNSET;
+        }
+    }
+
+    /**
+     * Returns the metrics so far. Durations are in milliseconds and -1 while unknown, bitrates are in
+     * bits per second.
+     */
+    Map<String, Object> getMetrics() {
+        long nowMs = SystemClock.elapsedRealtime();
+        long rebufferMs = rebufferDurationMs + (rebufferStartMs != C.TIME_UNSET ? nowMs - rebufferStartMs : 0);
+        long playingMs = playingDurationMs + (playingSinceMs != C.TIME_UNSET ? nowMs - playingSinceMs : 0);
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("timeToFirstFrame", timeToFirstFrameMs != C.TIME_UNSET ? timeToFirstFrameMs : -1);
+        metrics.put("rebufferCount", rebufferCount);
+        metrics.put("rebufferDuration", rebufferMs);
+        metrics.put("playingDuration", playingMs);
+        metrics.put("droppedFrames", droppedFrames);
+        metrics.put("videoDecoderName", videoDecoderName);
+        metrics.put("videoDecoderInitTime", videoDecoderInitMs != C.TIME_UNSET ? videoDecoderInitMs : -1);
+        metrics.put("bandwidthEstimate", bandwidthEstimate);
+        metrics.put("bytesLoaded", bytesLoaded);
+        metrics.put("bitrate", bitrate);
+        metrics.put("bitrateSwitches", bitrateSwitches);
+        return metrics;
+    }
+}
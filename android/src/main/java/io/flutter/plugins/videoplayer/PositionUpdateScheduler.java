@@ -0,0 +1,98 @@
+// Copyright 2017 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.videoplayer;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Drives periodic ticks for any number of subscribers from a single main-looper {@link Handler}.
+ *
+ * <p>Every subscriber is ticked at its own interval, and the handler only wakes up when the
+ * earliest pending tick is due. Nothing is scheduled while there are no subscribers.
+ *
+ * <p>This class is not thread-safe. All calls must be done on the main thread.
+ */
+final class PositionUpdateScheduler {
+
+    interface Listener {
+        void onTick();
+    }
+
+    private static final class Subscription {
+        final Listener listener;
+        long intervalMs;
+        long nextTickAtMs;
+
+        Subscription(Listener listener, long intervalMs, long nextTickAtMs) {
+            this.listener = listener;
+            this.intervalMs = intervalMs;
+            this.nextTickAtMs = nextTickAtMs;
+        }
+    }
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    private final Runnable tickRunnable = this::tick;
+
+    void subscribe(Listener listener, long intervalMs) {
+        long now = SystemClock.elapsedRealtime();
+        Subscription subscription = find(listener);
+        if (subscription == null) {
+            subscriptions.add(new Subscription(listener, intervalMs, now + intervalMs));
+        } else {
+            subscription.intervalMs = intervalMs;
+            subscription.nextTickAtMs = now + intervalMs;
+        }
+        reschedule(now);
+    }
+
+    void unsubscribe(Listener listener) {
+        Subscription subscription = find(listener);
+        if (subscription == null) {
+            return;
+        }
+        subscriptions.remove(subscription);
+        reschedule(SystemClock.elapsedRealtime());
+    }
+
+    private Subscription find(Listener listener) {
+        for (Subscription subscription : subscriptions) {
+            if (subscription.listener == listener) {
+                return subscription;
+            }
+        }
+        return null;
+    }
+
+    private void tick() {
+        long now = SystemClock.elapsedRealtime();
+        // Listeners may unsubscribe themselves while being ticked.
+        Subscription[] snapshot = subscriptions.toArray(new Subscription[0]);
+        for (Subscription subscription : snapshot) {
+            if (subscription.nextTickAtMs <= now && subscriptions.contains(subscription)) {
+                subscription.nextTickAtMs = now + subscription.intervalMs;
+                subscription.listener.onTick();
+            }
+        }
+        reschedule(now);
+    }
+
+    private void reschedule(long now) {
+        handler.removeCallbacks(tickRunnable);
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        long nextTickAtMs = Long.MAX_VALUE;
+        for (Subscription subscription : subscriptions) {
+            nextTickAtMs = Math.min(nextTickAtMs, subscription.nextTickAtMs);
+        }
+        handler.postDelayed(tickRunnable, Math.max(0, nextTickAtMs - now));
+    }
+}
@@ -0,0 +1,62 @@
+// Copyright 2017 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.videoplayer;
+
+import com.google.android.exoplayer2.Timeline;
+import com.google.android.exoplayer2.source.MediaSource;
+import com.google.android.exoplayer2.trackselection.AdaptiveTrackSelection;
+import com.google.android.exoplayer2.trackselection.ExoTrackSelection;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+
+/**
+ * Builds the adaptive selections of one player for its startup policy.
+ *
+ * <p>The first variant is the highest one whose bitrate fits in a fraction of the bandwidth
+ * estimate: a small fraction gets the first frame quickly, a large one starts closer to the best
+ * quality the network allows. The fraction keeps applying to later switches.
+ */
+final class StartupTrackSelectionFactory implements ExoTrackSelection.Factory {
+
+    static final int POLICY_BALANCED = 0;
+    static final int POLICY_FASTEST_START = 1;
+    static final int POLICY_BEST_QUALITY = 2;
+
+    private static final ExoTrackSelection.Factory[] FACTORIES = {
+            new AdaptiveTrackSelection.Factory(),
+            new AdaptiveTrackSelection.Factory(
+                    AdaptiveTrackSelection.DEFAULT_MIN_DURATION_FOR_QUALITY_INCREASE_MS,
+                    AdaptiveTrackSelection.DEFAULT_MAX_DURATION_FOR_QUALITY_DECREASE_MS,
+                    AdaptiveTrackSelection.DEFAULT_MIN_DURATION_TO_RETAIN_AFTER_DISCARD_MS,
+                    /* bandwidthFraction= */ 0.5f),
+            new AdaptiveTrackSelection.Factory(
+                    /* minDurationForQualityIncreaseMs= */ 2000,
+                    AdaptiveTrackSelection.DEFAULT_MAX_DURATION_FOR_QUALITY_DECREASE_MS,
+                    AdaptiveTrackSelection.DEFAULT_MIN_DURATION_TO_RETAIN_AFTER_DISCARD_MS,
+                    /* bandwidthFraction= */ 0.9f),
+    };
+
+    private volatile int policy = POLICY_BALANCED;
+
+    static boolean isPolicy(int policy) {
+        return policy >= 0 && policy < FACTORIES.length;
+    }
+
+    /** Applies to the selections made from the next prepare or track selection on. */
+    void setPolicy(int policy) {
+        if (!isPolicy(policy)) {
+            throw new IllegalArgumentException("Unknown startup policy " + policy);
+        }
+        this.policy = policy;
+    }
+
+    @Override
+    public ExoTrackSelection[] createTrackSelections(
+            ExoTrackSelection.Definition[] definitions,
+            BandwidthMeter bandwidthMeter,
+            MediaSource.MediaPeriodId mediaPeriodId,
+            Timeline timeline) {
+        return FACTORIES[policy].createTrackSelections(definitions, bandwidthMeter, mediaPeriodId, timeline);
+    }
+}
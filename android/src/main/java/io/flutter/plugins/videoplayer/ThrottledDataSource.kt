@@ -0,0 +1,84 @@
+package io.flutter.plugins.videoplayer
+
+import android.net.Uri
+import android.os.SystemClock
+import com.google.android.exoplayer2.upstream.DataSource
+import com.google.android.exoplayer2.upstream.DataSpec
+import com.google.android.exoplayer2.upstream.TransferListener
+
+/**
+ * A token bucket shared by every [ThrottledDataSource], capping their combined throughput at
+ * [maxBytesPerSecond]. A cap of 0 means unlimited.
+ */
+class BandwidthThrottle(maxBytesPerSecond: Long) {
+
+    @Volatile
+    var maxBytesPerSecond: Long = maxBytesPerSecond
+
+    private var availableBytes = 0L
+    private var lastRefillMs = SystemClock.elapsedRealtime()
+
+    /** Blocks the calling thread until [bytes] may be transferred under the cap. */
+    @Throws(InterruptedException::class)
+    fun acquire(bytes: Int) {
+        var waitMs: Long
+        synchronized(this) {
+            val rate = maxBytesPerSecond
+            if (rate <= 0) {
+                return
+            }
+            val now = SystemClock.elapsedRealtime()
+            // At most one second worth of bytes may be saved up for a burst.
+            availableBytes = Math.min(rate, availableBytes + (now - lastRefillMs) * rate / 1000)
+            lastRefillMs = now
+            availableBytes -= bytes
+            waitMs = if (availableBytes < 0) -availableBytes * 1000 / rate else 0
+        }
+        if (waitMs > 0) {
+            Thread.sleep(waitMs)
+        }
+    }
+}
+
+/** Wraps an upstream [DataSource], waiting on a [BandwidthThrottle] for every read. */
+class ThrottledDataSource(
+    private val upstream: DataSource,
+    private val throttle: BandwidthThrottle
+) : DataSource {
+
+    class Factory(
+        private val upstreamFactory: DataSource.Factory,
+        private val throttle: BandwidthThrottle
+    ) : DataSource.Factory {
+        override fun createDataSource(): DataSource {
+            return ThrottledDataSource(upstreamFactory.createDataSource(), throttle)
+        }
+    }
+
+    override fun addTransferListener(transferListener: TransferListener) {
+        upstream.addTransferListener(transferListener)
+    }
+
+    override fun open(dataSpec: DataSpec): Long = upstream.open(dataSpec)
+
+    override fun read(buffer: ByteArray, offset: Int, readLength: Int): Int {
+        val bytesRead = upstream.read(buffer, offset, readLength)
+        if (bytesRead > 0) {
+            try {
+                throttle.acquire(bytesRead)
+            } catch (e: InterruptedException) {
+                Thread.currentThread().interrupt()
+                throw java.io.InterruptedIOException()
+            }
+        }
+        return bytesRead
+    }
+
+    override fun getUri(): Uri? = upstream.uri
+
+    override fun getResponseHeaders(): Map<String, List<String>> = upstream.responseHeaders
+
+    override fun close() {
+        upstream.close()
+    }
+}
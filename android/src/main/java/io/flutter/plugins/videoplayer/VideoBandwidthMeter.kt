@@ -0,0 +1,65 @@
+package io.flutter.plugins.videoplayer
+
+import android.annotation.SuppressLint
+import android.content.Context
+import android.content.SharedPreferences
+import android.os.Handler
+import android.os.Looper
+import android.os.SystemClock
+import com.google.android.exoplayer2.C
+import com.google.android.exoplayer2.upstream.BandwidthMeter
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter
+import com.google.android.exoplayer2.util.NetworkTypeObserver
+
+/**
+ * 网速估计
+ *
+ * The bandwidth meter shared by every player, so a new player starts from what earlier ones
+ * measured. The estimate of each network type is saved, and seeds the meter of the next session
+ * instead of the country defaults of [DefaultBandwidthMeter].
+ */
+class VideoBandwidthMeter private constructor(private val context: Context) : BandwidthMeter.EventListener {
+
+    companion object {
+        private const val PREFS_NAME = "video_bandwidth_estimate"
+        private const val SAVE_INTERVAL_MS = 10_000L
+
+        @SuppressLint("StaticFieldLeak")
+        @Volatile
+        private var instance: VideoBandwidthMeter? = null
+
+        fun getInstance(context: Context) = instance ?: synchronized(this) {
+            instance ?: VideoBandwidthMeter(context.applicationContext).also { instance = it }
+        }
+    }
+
+    private val prefs: SharedPreferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+    private var lastSavedAtMs = 0L
+
+    val bandwidthMeter: DefaultBandwidthMeter
+
+    init {
+        val builder = DefaultBandwidthMeter.Builder(context)
+        for ((key, value) in prefs.all) {
+            val networkType = key.toIntOrNull() ?: continue
+            if (value is Long) {
+                builder.setInitialBitrateEstimate(networkType, value)
+            }
+        }
+        bandwidthMeter = builder.build()
+        bandwidthMeter.addEventListener(Handler(Looper.getMainLooper()), this)
+    }
+
+    override fun onBandwidthSample(elapsedMs: Int, bytesTransferred: Long, bitrateEstimate: Long) {
+        val now = SystemClock.elapsedRealtime()
+        if (now - lastSavedAtMs < SAVE_INTERVAL_MS) {
+            return
+        }
+        val networkType = NetworkTypeObserver.getInstance(context).networkType
+        if (networkType == C.NETWORK_TYPE_UNKNOWN || networkType == C.NETWORK_TYPE_OFFLINE) {
+            return
+        }
+        lastSavedAtMs = now
+        prefs.edit().putLong(networkType.toString(), bitrateEstimate).apply()
+    }
+}
@@ -0,0 +1,75 @@
+package io.flutter.plugins.videoplayer
+
+import android.annotation.SuppressLint
+import android.content.Context
+import android.content.SharedPreferences
+import android.net.Uri
+import com.google.android.exoplayer2.offline.DownloadRequest
+import com.google.android.exoplayer2.upstream.cache.CacheKeyFactory
+
+/**
+ * 缓存键
+ *
+ * Decides which urls are the same media, for the download index, the download cache and the
+ * playback cache alike. Urls differing only in [ignoredQueryParameters], such as expiring CDN
+ * tokens, share one key. A content id given by the app identifies the download of a player's
+ * media instead of its url, and is also the cache key of progressive media.
+ *
+ * The policy is saved, so downloads of an earlier session are found before Dart configures it.
+ */
+class VideoCacheKeyPolicy private constructor(context: Context) {
+
+    companion object {
+        private const val PREFS_NAME = "video_cache_key_policy"
+        private const val KEY_IGNORED_QUERY_PARAMETERS = "ignoredQueryParameters"
+
+        @SuppressLint("StaticFieldLeak")
+        @Volatile
+        private var instance: VideoCacheKeyPolicy? = null
+
+        fun getInstance(context: Context) = instance ?: synchronized(this) {
+            instance ?: VideoCacheKeyPolicy(context.applicationContext).also { instance = it }
+        }
+    }
+
+    private val prefs: SharedPreferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+
+    @Volatile
+    var ignoredQueryParameters: Set<String> =
+        HashSet(prefs.getStringSet(KEY_IGNORED_QUERY_PARAMETERS, null) ?: emptySet())
+        private set
+
+    /** Keys cache data by the explicit key of a request, or else by the url without ignored parameters. */
+    val cacheKeyFactory = CacheKeyFactory { dataSpec -> dataSpec.key ?: keyOf(dataSpec.uri) }
+
+    /** Replaces and saves the ignored query parameters. */
+    fun configure(ignoredQueryParameters: Collection<String>) {
+        this.ignoredQueryParameters = HashSet(ignoredQueryParameters)
+        prefs.edit().putStringSet(KEY_IGNORED_QUERY_PARAMETERS, HashSet(ignoredQueryParameters)).apply()
+    }
+
+    /** The key of [uri]: the url without the ignored query parameters. */
+    fun keyOf(uri: Uri): String {
+        val ignored = ignoredQueryParameters
+        if (ignored.isEmpty() || !uri.isHierarchical || uri.query == null) {
+            return uri.toString()
+        }
+        val builder = uri.buildUpon().clearQuery()
+        for (name in uri.queryParameterNames) {
+            if (name in ignored) {
+                continue
+            }
+            for (value in uri.getQueryParameters(name)) {
+                builder.appendQueryParameter(name, value)
+            }
+        }
+        return builder.build().toString()
+    }
+
+    /**
+     * The identity of a download: its id when that is a content id or an earlier key, else the key
+     * of its url. Adaptive downloads carry their content id only as their id, never as a cache key.
+     */
+    fun identityOf(request: DownloadRequest): String =
+        if (request.id != request.uri.toString()) request.id else keyOf(request.uri)
+}
@@ -0,0 +1,344 @@
+package io.flutter.plugins.videoplayer
+
+import android.annotation.SuppressLint
+import android.content.Context
+import android.net.Uri
+import android.os.ConditionVariable
+import com.google.android.exoplayer2.C
+import com.google.android.exoplayer2.DefaultRenderersFactory
+import com.google.android.exoplayer2.MediaItem
+import com.google.android.exoplayer2.offline.DefaultDownloaderFactory
+import com.google.android.exoplayer2.offline.DownloadHelper
+import com.google.android.exoplayer2.offline.Downloader
+import com.google.android.exoplayer2.offline.DownloadRequest
+import com.google.android.exoplayer2.offline.StreamKey
+import com.google.android.exoplayer2.trackselection.AdaptiveTrackSelection
+import com.google.android.exoplayer2.trackselection.DefaultTrackSelector
+import com.google.android.exoplayer2.upstream.DataSource
+import com.google.android.exoplayer2.upstream.DataSpec
+import com.google.android.exoplayer2.upstream.TransferListener
+import com.google.android.exoplayer2.upstream.cache.Cache
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource
+import com.google.android.exoplayer2.upstream.cache.CacheEvictor
+import com.google.android.exoplayer2.upstream.cache.CacheSpan
+import com.google.android.exoplayer2.upstream.cache.SimpleCache
+import com.google.android.exoplayer2.util.Log
+import com.google.android.exoplayer2.util.MimeTypes
+import com.google.android.exoplayer2.util.Util
+import java.io.File
+import java.io.IOException
+import java.util.Collections
+import java.util.TreeSet
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * 播放缓存
+ *
+ * Holds the playback cache shared by every player. Preloaded uris always read through it, and
+ * once [configurePlaybackCache] enables it all network playback does.
+ *
+ * [preload] fetches the start of upcoming media into the cache, so that a later player for the
+ * same uri can show its first frame without waiting for the network. Progressive media is cached
+ * under the key the player reads it with, adaptive media only in the variant it starts on.
+ *
+ * Manifests never stay in this cache, since live ones change under the same url. Preloads seed the
+ * [VideoManifestCache] with them instead, which players read manifests from.
+ */
+class VideoCacheManager private constructor(private val context: Context) {
+
+    private val CACHE_DIRECTORY = "video_cache"
+    private val DEFAULT_MAX_CACHE_BYTES = 256L * 1024 * 1024
+
+    companion object {
+        private const val TAG = "VideoCacheManager"
+
+        @SuppressLint("StaticFieldLeak")
+        @Volatile
+        private var instance: VideoCacheManager? = null
+
+        fun getInstance(context: Context) = instance ?: synchronized(this) {
+            instance ?: VideoCacheManager(context.applicationContext).also { instance = it }
+        }
+
+        /** The manifest mime type of adaptive streams, null for progressive media. */
+        @JvmStatic
+        fun inferMimeType(uri: Uri): String? = when (Util.inferContentType(uri)) {
+            C.TYPE_HLS -> MimeTypes.APPLICATION_M3U8
+            C.TYPE_DASH -> MimeTypes.APPLICATION_MPD
+            C.TYPE_SS -> MimeTypes.APPLICATION_SS
+            else -> null
+        }
+    }
+
+    /** Keys of the uris whose first bytes were written to [cache] by [preload]. */
+    private val preloadedKeys: MutableSet<String> = Collections.newSetFromMap(ConcurrentHashMap())
+
+    private val keyPolicy = VideoCacheKeyPolicy.getInstance(context)
+
+    /** Preloads run one at a time, in the order they were requested. */
+    private val preloadExecutor: ExecutorService = Executors.newSingleThreadExecutor()
+
+    /** Runs the segment downloads of the preload in progress. */
+    private val segmentExecutor: ExecutorService = Executors.newFixedThreadPool(2)
+
+    /** Bumped by every [preload] call, so that outdated requests are skipped. */
+    private val preloadGeneration = AtomicInteger()
+
+    @Volatile
+    private var activeDownloader: Downloader? = null
+
+    @Volatile
+    private var playbackCacheEnabled = false
+
+    private val cacheHitBytes = AtomicLong()
+    private val cacheMissBytes = AtomicLong()
+
+    private val cacheEvictor = ResizableLruCacheEvictor(DEFAULT_MAX_CACHE_BYTES)
+
+    val cache: Cache by lazy {
+        val cacheDirectory = File(context.cacheDir, CACHE_DIRECTORY)
+        SimpleCache(
+            cacheDirectory,
+            cacheEvictor,
+            VideoDownloadManager.getInstance(context).databaseProvider
+        )
+    }
+
+    private val cacheEventListener = object : CacheDataSource.EventListener {
+        override fun onCachedBytesRead(cacheSizeBytes: Long, cachedBytesRead: Long) {
+            cacheHitBytes.addAndGet(cachedBytesRead)
+        }
+
+        override fun onCacheIgnored(reason: Int) {}
+    }
+
+    /** Counts the bytes players had to fetch from the network, i.e. cache misses. */
+    private val upstreamTransferListener = object : TransferListener {
+        override fun onTransferInitializing(source: DataSource, dataSpec: DataSpec, isNetwork: Boolean) {}
+
+        override fun onTransferStart(source: DataSource, dataSpec: DataSpec, isNetwork: Boolean) {}
+
+        override fun onBytesTransferred(
+            source: DataSource,
+            dataSpec: DataSpec,
+            isNetwork: Boolean,
+            bytesTransferred: Int
+        ) {
+            cacheMissBytes.addAndGet(bytesTransferred.toLong())
+        }
+
+        override fun onTransferEnd(source: DataSource, dataSpec: DataSpec, isNetwork: Boolean) {}
+    }
+
+    fun isPreloaded(uri: Uri): Boolean = preloadedKeys.contains(keyPolicy.keyOf(uri))
+
+    /** Whether a player for [uri] should read through the playback cache. */
+    fun shouldCache(uri: Uri): Boolean = playbackCacheEnabled || isPreloaded(uri)
+
+    /**
+     * Turns caching on or off for all network playback and bounds the cache to [maxBytes],
+     * evicting the least recently used data right away if it is now too large.
+     */
+    fun configurePlaybackCache(enabled: Boolean, maxBytes: Long) {
+        playbackCacheEnabled = enabled
+        cacheEvictor.resize(maxBytes)
+    }
+
+    fun getPlaybackCacheStats(): Map<String, Long> {
+        return mapOf(
+            "hitBytes" to cacheHitBytes.get(),
+            "missBytes" to cacheMissBytes.get(),
+            "cacheBytes" to cache.cacheSpace
+        )
+    }
+
+    /** Wraps [upstreamFactory] for playback, counting cache hits and misses. */
+    fun buildPlaybackDataSourceFactory(upstreamFactory: DataSource.Factory): CacheDataSource.Factory {
+        val countingUpstreamFactory = DataSource.Factory {
+            upstreamFactory.createDataSource().also { it.addTransferListener(upstreamTransferListener) }
+        }
+        return buildCacheDataSourceFactory(countingUpstreamFactory)
+            .setEventListener(cacheEventListener)
+    }
+
+    private fun buildCacheDataSourceFactory(upstreamFactory: DataSource.Factory): CacheDataSource.Factory {
+        return CacheDataSource.Factory()
+            .setCache(cache)
+            .setUpstreamDataSourceFactory(upstreamFactory)
+            .setFlags(CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR)
+            .setCacheKeyFactory(keyPolicy.cacheKeyFactory)
+    }
+
+    /**
+     * Replaces any pending preloads with [uris], fetching the manifest and at most
+     * [maxBytesPerItem] bytes of media for each of them. [contentIds] are the content ids players
+     * of some of the uris are created with.
+     */
+    fun preload(uris: List<Uri>, contentIds: Map<Uri, String>, maxBytesPerItem: Long) {
+        val generation = preloadGeneration.incrementAndGet()
+        activeDownloader?.cancel()
+        for (uri in uris) {
+            preloadedKeys.add(keyPolicy.keyOf(uri))
+            preloadExecutor.execute {
+                if (generation == preloadGeneration.get()) {
+                    preloadItem(uri, contentIds[uri], maxBytesPerItem, generation)
+                }
+            }
+        }
+    }
+
+    private fun preloadItem(uri: Uri, contentId: String?, maxBytes: Long, generation: Int) {
+        val mimeType = inferMimeType(uri)
+        // Fetched manifests seed the manifest cache, which players read them from. On disk they are
+        // cached under keys of this preload only and removed once it ends, so that a live playlist
+        // is never read back stale.
+        val manifestKeys: MutableSet<String> = Collections.newSetFromMap(ConcurrentHashMap())
+        val upstreamFactory = VideoManifestCache.getInstance()
+            .buildSeedingDataSourceFactory(VideoHttpStack.getInstance().dataSourceFactory)
+        val preloadDataSourceFactory = buildCacheDataSourceFactory(upstreamFactory)
+            .setCacheKeyFactory { dataSpec ->
+                if (inferMimeType(dataSpec.uri) != null) {
+                    "preload:$generation:${keyPolicy.keyOf(dataSpec.uri)}".also { manifestKeys.add(it) }
+                } else {
+                    keyPolicy.cacheKeyFactory.buildCacheKey(dataSpec)
+                }
+            }
+        try {
+            // A player keys progressive media by its content id, and adaptive media by segment url.
+            val requestBuilder = DownloadRequest.Builder(uri.toString(), uri).setMimeType(mimeType)
+            if (mimeType == null) {
+                requestBuilder.setCustomCacheKey(contentId)
+            } else {
+                requestBuilder.setStreamKeys(selectStreamKeys(uri, mimeType, preloadDataSourceFactory))
+            }
+            val downloader = DefaultDownloaderFactory(preloadDataSourceFactory, segmentExecutor)
+                .createDownloader(requestBuilder.build())
+            activeDownloader = downloader
+            if (generation != preloadGeneration.get()) {
+                return
+            }
+            downloader.download { _, bytesDownloaded, _ ->
+                if (bytesDownloaded >= maxBytes) {
+                    downloader.cancel()
+                }
+            }
+        } catch (e: InterruptedException) {
+            // Either the budget was reached or a newer preload replaced this one.
+            Thread.interrupted()
+        } catch (e: IOException) {
+            Log.w(TAG, "Failed to preload $uri", e)
+            preloadedKeys.remove(keyPolicy.keyOf(uri))
+        } finally {
+            activeDownloader = null
+            for (key in manifestKeys) {
+                cache.removeResource(key)
+            }
+        }
+    }
+
+    /**
+     * The variant a player would start on at the current bandwidth estimate, with its audio, so
+     * that the byte budget isn't spread over renditions the player won't pick.
+     */
+    private fun selectStreamKeys(uri: Uri, mimeType: String, dataSourceFactory: DataSource.Factory): List<StreamKey> {
+        val bitrateEstimate = VideoBandwidthMeter.getInstance(context).bandwidthMeter.bitrateEstimate
+        val parameters = DefaultTrackSelector.ParametersBuilder(context)
+            .setMaxVideoBitrate((bitrateEstimate * AdaptiveTrackSelection.DEFAULT_BANDWIDTH_FRACTION).toInt())
+            .setForceHighestSupportedBitrate(true)
+            .build()
+        val helper = DownloadHelper.forMediaItem(
+            MediaItem.Builder().setUri(uri).setMimeType(mimeType).build(),
+            parameters,
+            DefaultRenderersFactory(context),
+            dataSourceFactory
+        )
+        // The callback arrives on the main looper, this runs on the preload thread.
+        val prepared = ConditionVariable()
+        var prepareError: IOException? = null
+        helper.prepare(object : DownloadHelper.Callback {
+            override fun onPrepared(helper: DownloadHelper) {
+                prepared.open()
+            }
+
+            override fun onPrepareError(helper: DownloadHelper, e: IOException) {
+                prepareError = e
+                prepared.open()
+            }
+        })
+        try {
+            prepared.block()
+            val error = prepareError
+            if (error != null) {
+                throw error
+            }
+            return helper.getDownloadRequest(null).streamKeys
+        } finally {
+            helper.release()
+        }
+    }
+}
+
+/**
+ * A least recently used [CacheEvictor] whose size limit can be changed while the cache is in use.
+ *
+ * Callbacks from the cache arrive while it holds its own lock, [resize] takes the same lock.
+ */
+internal class ResizableLruCacheEvictor(@Volatile private var maxBytes: Long) : CacheEvictor {
+
+    private val leastRecentlyUsed = TreeSet<CacheSpan> { lhs, rhs ->
+        if (lhs.lastTouchTimestamp == rhs.lastTouchTimestamp) {
+            lhs.compareTo(rhs)
+        } else if (lhs.lastTouchTimestamp < rhs.lastTouchTimestamp) {
+            -1
+        } else {
+            1
+        }
+    }
+    private var currentSize = 0L
+    private var cache: Cache? = null
+
+    fun resize(maxBytes: Long) {
+        this.maxBytes = maxBytes
+        val cache = this.cache ?: return
+        synchronized(cache) {
+            evictCache(cache, 0)
+        }
+    }
+
+    override fun requiresCacheSpanTouches() = true
+
+    override fun onCacheInitialized() {}
+
+    override fun onStartFile(cache: Cache, key: String, position: Long, length: Long) {
+        if (length != C.LENGTH_UNSET.toLong()) {
+            evictCache(cache, length)
+        }
+    }
+
+    override fun onSpanAdded(cache: Cache, span: CacheSpan) {
+        this.cache = cache
+        leastRecentlyUsed.add(span)
+        currentSize += span.length
+        evictCache(cache, 0)
+    }
+
+    override fun onSpanRemoved(cache: Cache, span: CacheSpan) {
+        leastRecentlyUsed.remove(span)
+        currentSize -= span.length
+    }
+
+    override fun onSpanTouched(cache: Cache, oldSpan: CacheSpan, newSpan: CacheSpan) {
+        onSpanRemoved(cache, oldSpan)
+        onSpanAdded(cache, newSpan)
+    }
+
+    private fun evictCache(cache: Cache, requiredSpace: Long) {
+        while (currentSize + requiredSpace > maxBytes && !leastRecentlyUsed.isEmpty()) {
+            cache.removeSpan(leastRecentlyUsed.first())
+        }
+    }
+}
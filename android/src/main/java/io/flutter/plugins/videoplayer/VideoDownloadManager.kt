@@ -2,15 +2,19 @@ package io.flutter.plugins.videoplayer
 
 import android.annotation.SuppressLint
 import android.content.Context
+import android.content.SharedPreferences
 import com.google.android.exoplayer2.database.DatabaseProvider
 import com.google.android.exoplayer2.database.ExoDatabaseProvider
+import com.google.android.exoplayer2.offline.DefaultDownloadIndex
+import com.google.android.exoplayer2.offline.DefaultDownloaderFactory
 import com.google.android.exoplayer2.offline.DownloadManager
 import com.google.android.exoplayer2.ui.DownloadNotificationHelper
 import com.google.android.exoplayer2.upstream.*
 import com.google.android.exoplayer2.upstream.cache.*
-import com.google.android.exoplayer2.util.Util
 import java.io.File
-import java.util.concurrent.Executors
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
 
 /**
  * Created by cnting on 2019-08-05
@@ -19,9 +23,17 @@ import java.util.concurrent.Executors
 class VideoDownloadManager private constructor(private val context: Context) {
 
     private val DOWNLOAD_CONTENT_DIRECTORY = "video_downloads"
-    private val userAgent = Util.getUserAgent(context, "ExoPlayerDemo")
 
     companion object {
+        private const val CONFIG_PREFS_NAME = "video_download_config"
+        private const val KEY_MAX_PARALLEL_DOWNLOADS = "maxParallelDownloads"
+        private const val KEY_SEGMENT_THREADS = "segmentThreads"
+        private const val KEY_MAX_BYTES_PER_SECOND = "maxBytesPerSecond"
+
+        const val DEFAULT_MAX_PARALLEL_DOWNLOADS = DownloadManager.DEFAULT_MAX_PARALLEL_DOWNLOADS
+        const val DEFAULT_SEGMENT_THREADS = 6
+
+
         @SuppressLint("StaticFieldLeak")
         @Volatile
         private var instance: VideoDownloadManager? = null
@@ -38,27 +50,82 @@ class VideoDownloadManager private constructor(private val context: Context) {
 //        val downloadManager = DownloadManager(
 //                context, downloadIndex, DefaultDownloaderFactory(downloaderConstructorHelper)
 //        )
+        val cacheDataSourceFactory = CacheDataSource.Factory()
+            .setCache(downloadCache)
+            .setUpstreamDataSourceFactory(ThrottledDataSource.Factory(buildHttpDataSourceFactory, bandwidthThrottle))
+            .setCacheKeyFactory(keyPolicy.cacheKeyFactory)
         val downloadManager = DownloadManager(
             context,
-            databaseProvider,
-            downloadCache,
-            buildHttpDataSourceFactory,
-            Executors.newFixedThreadPool(6)
+            DefaultDownloadIndex(databaseProvider),
+            DefaultDownloaderFactory(cacheDataSourceFactory, segmentExecutor)
         )
+        downloadManager.maxParallelDownloads =
+            config.getInt(KEY_MAX_PARALLEL_DOWNLOADS, DEFAULT_MAX_PARALLEL_DOWNLOADS)
         downloadManager
     }
 
+    val downloadScheduler: VideoDownloadScheduler by lazy {
+        VideoDownloadScheduler(context, downloadManager)
+    }
+
+    private val config: SharedPreferences by lazy {
+        context.getSharedPreferences(CONFIG_PREFS_NAME, Context.MODE_PRIVATE)
+    }
+
+    /** Loads the segments of all downloads, shared by the running downloads. */
+    private val segmentExecutor: ThreadPoolExecutor by lazy {
+        val threads = config.getInt(KEY_SEGMENT_THREADS, DEFAULT_SEGMENT_THREADS)
+        ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, LinkedBlockingQueue())
+    }
+
+    /** Caps the combined throughput of all downloads, playback is not throttled. */
+    private val bandwidthThrottle: BandwidthThrottle by lazy {
+        BandwidthThrottle(config.getLong(KEY_MAX_BYTES_PER_SECOND, 0L))
+    }
+
+    /**
+     * Applies and persists the download scheduling settings. [segmentThreads], at least 1, caps the
+     * segments loaded at once by all downloads together. A [maxBytesPerSecond] of 0 removes the
+     * bandwidth cap. Must be called on the main thread.
+     */
+    fun configureDownloads(maxParallelDownloads: Int, segmentThreads: Int, maxBytesPerSecond: Long) {
+        config.edit()
+            .putInt(KEY_MAX_PARALLEL_DOWNLOADS, maxParallelDownloads)
+            .putInt(KEY_SEGMENT_THREADS, segmentThreads)
+            .putLong(KEY_MAX_BYTES_PER_SECOND, maxBytesPerSecond)
+            .apply()
+        bandwidthThrottle.maxBytesPerSecond = maxBytesPerSecond
+        // The maximum pool size may never drop below the core pool size.
+        if (segmentThreads > segmentExecutor.maximumPoolSize) {
+            segmentExecutor.maximumPoolSize = segmentThreads
+            segmentExecutor.corePoolSize = segmentThreads
+        } else {
+            segmentExecutor.corePoolSize = segmentThreads
+            segmentExecutor.maximumPoolSize = segmentThreads
+        }
+        downloadManager.maxParallelDownloads = maxParallelDownloads
+        downloadScheduler.rebalance()
+    }
+
+    val keyPolicy: VideoCacheKeyPolicy by lazy {
+        VideoCacheKeyPolicy.getInstance(context)
+    }
+
     val downloadTracker: VideoDownloadTracker by lazy {
-        val downloadTracker = VideoDownloadTracker(downloadManager)
+        val downloadTracker = VideoDownloadTracker(downloadManager, keyPolicy)
         downloadTracker
     }
 
+    val downloadQuotaManager: VideoDownloadQuotaManager by lazy {
+        VideoDownloadQuotaManager(context, downloadTracker)
+    }
+
     val downloadNotificationHelper:DownloadNotificationHelper by lazy {
         val helper = DownloadNotificationHelper(context, "download_channel")
         helper
     }
 
-    private val databaseProvider: DatabaseProvider by lazy {
+    val databaseProvider: DatabaseProvider by lazy {
         val p = ExoDatabaseProvider(context)
         p
     }
@@ -77,9 +144,8 @@ class VideoDownloadManager private constructor(private val context: Context) {
         downloadCache
     }
 
-    private val buildHttpDataSourceFactory: HttpDataSource.Factory by lazy {
-        val factory = DefaultHttpDataSourceFactory(userAgent)
-        factory
+    private val buildHttpDataSourceFactory: DataSource.Factory by lazy {
+        VideoHttpStack.getInstance().dataSourceFactory
     }
 
     val localDataSourceFactory:DataSource.Factory by lazy {
@@ -91,10 +157,13 @@ class VideoDownloadManager private constructor(private val context: Context) {
     private fun buildReadOnlyCacheDataSource(
             upstreamFactory: DataSource.Factory,
             cache: Cache
-    ): CacheDataSourceFactory {
-        return CacheDataSourceFactory(
-                cache, upstreamFactory, FileDataSourceFactory(), null, CacheDataSource.FLAG_BLOCK_ON_CACHE or CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR, null
-        )
+    ): CacheDataSource.Factory {
+        return CacheDataSource.Factory()
+            .setCache(cache)
+            .setUpstreamDataSourceFactory(upstreamFactory)
+            .setCacheWriteDataSinkFactory(null)
+            .setFlags(CacheDataSource.FLAG_BLOCK_ON_CACHE or CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR)
+            .setCacheKeyFactory(keyPolicy.cacheKeyFactory)
     }
 
 
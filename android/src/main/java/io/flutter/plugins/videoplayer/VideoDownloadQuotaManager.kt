@@ -0,0 +1,133 @@
+package io.flutter.plugins.videoplayer
+
+import android.content.Context
+import android.content.SharedPreferences
+import com.google.android.exoplayer2.offline.Download
+import com.google.android.exoplayer2.offline.DownloadService
+
+/**
+ * 下载空间管理
+ *
+ * Keeps the download cache under a byte quota. When completed downloads exceed it, unpinned
+ * downloads are removed, least recently played or oldest completed first.
+ *
+ * Usage is summed from the bytes recorded in the download index, the cache directory is never
+ * walked. All calls must be done on the main thread.
+ */
+class VideoDownloadQuotaManager(
+    private val context: Context,
+    private val downloadTracker: VideoDownloadTracker
+) : VideoDownloadTracker.Listener {
+
+    companion object {
+        private const val PREFS_NAME = "video_download_quota"
+        private const val KEY_MAX_BYTES = "maxBytes"
+        private const val KEY_POLICY = "policy"
+        private const val KEY_PINNED = "pinned"
+        private const val KEY_PLAYED_PREFIX = "played:"
+
+        const val POLICY_LEAST_RECENTLY_PLAYED = "leastRecentlyPlayed"
+        const val POLICY_OLDEST_COMPLETED = "oldestCompleted"
+
+        /** No quota, downloads are kept until removed. */
+        const val UNLIMITED = 0L
+    }
+
+    private val prefs: SharedPreferences =
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+
+    /** Ids removed by [enforceQuota] that are still in the download index. */
+    private val pendingRemovals = HashSet<String>()
+
+    init {
+        downloadTracker.addListener(this)
+        enforceQuota()
+    }
+
+    fun setQuota(maxBytes: Long, policy: String) {
+        prefs.edit()
+            .putLong(KEY_MAX_BYTES, maxBytes)
+            .putString(KEY_POLICY, policy)
+            .apply()
+        enforceQuota()
+    }
+
+    /** Pins the download [id], its identity given by [VideoDownloadTracker.identityOf]. */
+    fun setPinned(id: String, pinned: Boolean) {
+        val pinnedIds = HashSet(prefs.getStringSet(KEY_PINNED, emptySet())!!)
+        if (pinned) pinnedIds.add(id) else pinnedIds.remove(id)
+        prefs.edit().putStringSet(KEY_PINNED, pinnedIds).apply()
+        if (!pinned) {
+            enforceQuota()
+        }
+    }
+
+    /** Records that the download [id] was just played, for the least recently played policy. */
+    fun onPlayed(id: String) {
+        prefs.edit().putLong(KEY_PLAYED_PREFIX + id, System.currentTimeMillis()).apply()
+    }
+
+    fun getUsage(): Map<String, Any> {
+        val pinnedIds = prefs.getStringSet(KEY_PINNED, emptySet())!!
+        var totalBytes = 0L
+        val downloads = ArrayList<Map<String, Any>>()
+        for (download in downloadTracker.getDownloads()) {
+            totalBytes += download.bytesDownloaded
+            downloads.add(
+                mapOf(
+                    "uri" to download.request.uri.toString(),
+                    "bytes" to download.bytesDownloaded,
+                    "pinned" to pinnedIds.contains(download.request.id)
+                )
+            )
+        }
+        return mapOf(
+            "totalBytes" to totalBytes,
+            "maxBytes" to prefs.getLong(KEY_MAX_BYTES, UNLIMITED),
+            "downloads" to downloads
+        )
+    }
+
+    override fun onDownloadsChanged() {
+        enforceQuota()
+    }
+
+    private fun enforceQuota() {
+        val maxBytes = prefs.getLong(KEY_MAX_BYTES, UNLIMITED)
+        if (maxBytes == UNLIMITED) {
+            return
+        }
+        val downloads = downloadTracker.getDownloads()
+        pendingRemovals.retainAll(downloads.map { it.request.id })
+        val retained = downloads.filter {
+            it.state != Download.STATE_REMOVING && !pendingRemovals.contains(it.request.id)
+        }
+        var totalBytes = retained.map { it.bytesDownloaded }.sum()
+        if (totalBytes <= maxBytes) {
+            return
+        }
+        val pinnedIds = prefs.getStringSet(KEY_PINNED, emptySet())!!
+        val byPolicy = if (prefs.getString(KEY_POLICY, POLICY_LEAST_RECENTLY_PLAYED) == POLICY_OLDEST_COMPLETED) {
+            compareBy<Download> { it.updateTimeMs }
+        } else {
+            compareBy<Download> { prefs.getLong(KEY_PLAYED_PREFIX + it.request.id, it.updateTimeMs) }
+        }
+        val candidates = retained
+            .filter { it.state == Download.STATE_COMPLETED && !pinnedIds.contains(it.request.id) }
+            .sortedWith(byPolicy)
+        for (download in candidates) {
+            if (totalBytes <= maxBytes) {
+                break
+            }
+            totalBytes -= download.bytesDownloaded
+            pendingRemovals.add(download.request.id)
+            prefs.edit().remove(KEY_PLAYED_PREFIX + download.request.id).apply()
+            DownloadService.sendRemoveDownload(
+                context,
+                VideoDownloadService::class.java,
+                download.request.id,
+                false
+            )
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package io.flutter.plugins.videoplayer
+
+import android.content.Context
+import android.content.SharedPreferences
+import com.google.android.exoplayer2.offline.Download
+import com.google.android.exoplayer2.offline.DownloadManager
+import java.lang.Exception
+
+/**
+ * 下载优先级
+ *
+ * Makes sure the [DownloadManager.getMaxParallelDownloads] highest priority downloads are the ones
+ * that run. Lower priority downloads are held back with [STOP_REASON_PREEMPTED] and resume once a
+ * slot is free for them. Downloads stopped for any other reason are left alone.
+ *
+ * All calls must be done on the main thread.
+ */
+class VideoDownloadScheduler(
+    context: Context,
+    private val downloadManager: DownloadManager
+) : DownloadManager.Listener {
+
+    companion object {
+        private const val PREFS_NAME = "video_download_priority"
+
+        /** Stop reason of downloads waiting for higher priority ones. */
+        const val STOP_REASON_PREEMPTED = 0x5052 // "PR"
+
+        const val DEFAULT_PRIORITY = 0
+    }
+
+    private val prefs: SharedPreferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+
+    init {
+        downloadManager.addListener(this)
+        rebalance()
+    }
+
+    /** Downloads with a higher [priority] run first. Must be set before the download is added. */
+    fun setPriority(id: String, priority: Int) {
+        prefs.edit().putInt(id, priority).apply()
+        rebalance()
+    }
+
+    override fun onDownloadChanged(
+        downloadManager: DownloadManager,
+        download: Download,
+        finalException: Exception?
+    ) {
+        if (download.isTerminalState) {
+            prefs.edit().remove(download.request.id).apply()
+        }
+        rebalance()
+    }
+
+    override fun onDownloadRemoved(downloadManager: DownloadManager, download: Download) {
+        prefs.edit().remove(download.request.id).apply()
+        rebalance()
+    }
+
+    fun rebalance() {
+        val candidates = downloadManager.currentDownloads
+            .filter {
+                it.state != Download.STATE_REMOVING &&
+                    (it.stopReason == Download.STOP_REASON_NONE || it.stopReason == STOP_REASON_PREEMPTED)
+            }
+            .sortedWith(
+                compareByDescending<Download> { prefs.getInt(it.request.id, DEFAULT_PRIORITY) }
+                    .thenBy { it.startTimeMs }
+            )
+        candidates.forEachIndexed { index, download ->
+            val shouldRun = index < downloadManager.maxParallelDownloads
+            if (shouldRun && download.stopReason == STOP_REASON_PREEMPTED) {
+                downloadManager.setStopReason(download.request.id, Download.STOP_REASON_NONE)
+            } else if (!shouldRun && download.stopReason == Download.STOP_REASON_NONE) {
+                downloadManager.setStopReason(download.request.id, STOP_REASON_PREEMPTED)
+            }
+        }
+    }
+}
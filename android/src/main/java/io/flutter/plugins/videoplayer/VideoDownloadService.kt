@@ -34,6 +34,9 @@ class VideoDownloadService : DownloadService(
             VideoDownloadManager.getInstance(applicationContext).downloadNotificationHelper
         val downloadManager = VideoDownloadManager.getInstance(applicationContext).downloadManager
         downloadManager.addListener(TerminalStateNotificationHelper(this, notificationHelper))
+        // Keeps finished downloads within the quota even while no player is open.
+        VideoDownloadManager.getInstance(applicationContext).downloadQuotaManager
+        VideoDownloadManager.getInstance(applicationContext).downloadScheduler
         return downloadManager
     }
 
@@ -16,6 +16,8 @@
 package io.flutter.plugins.videoplayer
 
 import android.net.Uri
+import android.os.Handler
+import android.os.Looper
 import com.google.android.exoplayer2.offline.Download
 import com.google.android.exoplayer2.offline.DownloadIndex
 import com.google.android.exoplayer2.offline.DownloadManager
@@ -24,15 +26,39 @@ import com.google.android.exoplayer2.util.Log
 import java.io.IOException
 import java.lang.Exception
 import java.util.*
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.CopyOnWriteArraySet
 
 /**
  * 下载管理
+ *
+ * Progress of running downloads is sampled by one main-looper handler, every
+ * [progressIntervalMs], and only while someone listens to a running download.
+ *
+ * Downloads are tracked by the identity [VideoCacheKeyPolicy] gives them, so a url with a new
+ * token still finds its download.
  */
-class VideoDownloadTracker(downloadManager: DownloadManager) {
+class VideoDownloadTracker(
+    private val downloadManager: DownloadManager,
+    private val keyPolicy: VideoCacheKeyPolicy
+) {
 
     private val listeners: CopyOnWriteArraySet<Listener> = CopyOnWriteArraySet()
-    private val downloads: HashMap<Uri, Download> = HashMap()
+    private val downloadListeners: ConcurrentHashMap<String, CopyOnWriteArraySet<DownloadListener>> =
+        ConcurrentHashMap()
+    private val handler = Handler(Looper.getMainLooper())
+    private val progressRunnable = Runnable { sampleProgress() }
+    private var progressScheduled = false
+
+    /** How often the progress of running downloads is reported. */
+    @Volatile
+    var progressIntervalMs = 1000L
+    /**
+     * Written on the main thread by the download manager listener, read from any thread. Replaced
+     * whole by [reindex], so readers never see it half filled.
+     */
+    @Volatile
+    private var downloads: ConcurrentHashMap<String, Download> = ConcurrentHashMap()
     private val downloadIndex: DownloadIndex = downloadManager.downloadIndex
 
     /** Listens for changes in the tracked downloads.  */
@@ -42,6 +68,13 @@ class VideoDownloadTracker(downloadManager: DownloadManager) {
         fun onDownloadsChanged()
     }
 
+    /** Listens for changes of a single download, including its progress while it runs.  */
+    interface DownloadListener {
+
+        /** Called with the latest state of the download, or null once it was removed.  */
+        fun onDownloadChanged(download: Download?)
+    }
+
     init {
         downloadManager.addListener(DownloadManagerListener())
         loadDownloads()
@@ -55,22 +88,98 @@ class VideoDownloadTracker(downloadManager: DownloadManager) {
         listeners.remove(listener)
     }
 
-    fun getDownload(uri: Uri): Download? {
-        return downloads[uri]
+    /** Listens to the download of [identity], see [identityOf]. Must be called on the main thread. */
+    fun addDownloadListener(identity: String, listener: DownloadListener) {
+        downloadListeners.getOrPut(identity) { CopyOnWriteArraySet() }.add(listener)
+        maybeScheduleProgress()
     }
 
-    fun isDownloaded(uri: Uri): Boolean {
-        val download = downloads[uri]
+    /** Must be called on the main thread. */
+    fun removeDownloadListener(identity: String, listener: DownloadListener) {
+        val identityListeners = downloadListeners[identity] ?: return
+        identityListeners.remove(listener)
+        if (identityListeners.isEmpty()) {
+            downloadListeners.remove(identity)
+        }
+    }
+
+    private fun notifyDownloadListeners(identity: String, download: Download?) {
+        downloadListeners[identity]?.forEach { it.onDownloadChanged(download) }
+    }
+
+    /** The identity of the download of [uri], or of [contentId] when the app gave one. */
+    fun identityOf(uri: Uri, contentId: String?): String = contentId ?: keyPolicy.keyOf(uri)
+
+    /** Re-keys the tracked downloads after the key policy changed. Must be called on the main thread. */
+    fun reindex() {
+        val reindexed = ConcurrentHashMap<String, Download>()
+        for (download in downloads.values) {
+            reindexed[keyPolicy.identityOf(download.request)] = download
+        }
+        downloads = reindexed
+    }
+
+    private fun maybeScheduleProgress() {
+        if (progressScheduled) {
+            return
+        }
+        val hasListenedRunningDownload = downloads.values.any {
+            it.state == Download.STATE_DOWNLOADING &&
+                downloadListeners.containsKey(keyPolicy.identityOf(it.request))
+        }
+        if (hasListenedRunningDownload) {
+            progressScheduled = true
+            handler.postDelayed(progressRunnable, progressIntervalMs)
+        }
+    }
+
+    private fun sampleProgress() {
+        progressScheduled = false
+        for (download in downloadManager.currentDownloads) {
+            if (download.state == Download.STATE_DOWNLOADING) {
+                val identity = keyPolicy.identityOf(download.request)
+                downloads[identity] = download
+                notifyDownloadListeners(identity, download)
+            }
+        }
+        maybeScheduleProgress()
+    }
+
+    fun getDownloads(): Collection<Download> {
+        return ArrayList(downloads.values)
+    }
+
+    fun getDownload(identity: String): Download? {
+        return downloads[identity]
+    }
+
+    fun isDownloaded(identity: String): Boolean {
+        val download = downloads[identity]
         return download != null && download.state != Download.STATE_FAILED
     }
 
-    fun getDownloadState(uri: Uri): Int {
-        val download = downloads[uri]
+    fun getDownloadState(identity: String): Int {
+        val download = downloads[identity]
         return download?.state ?: Download.STATE_QUEUED
     }
 
-    fun getDownloadRequest(uri: Uri): DownloadRequest? {
-        val download = downloads[uri]
+    /**
+     * Returns the [GpDownloadState] and progress of each of [uris], keyed by uri, without
+     * touching any player. Uris in [contentIds] are looked up by their content id.
+     */
+    fun getDownloadStates(uris: List<Uri>, contentIds: Map<Uri, String>): Map<String, Map<String, Any>> {
+        val states = HashMap<String, Map<String, Any>>(uris.size)
+        for (uri in uris) {
+            val download = downloads[identityOf(uri, contentIds[uri])]
+            val state = GpDownloadState.of(download)
+            val progress = GpDownloadState.progressOf(download)
+            states[uri.toString()] = mapOf("state" to state, "progress" to progress)
+        }
+        return states
+    }
+
+    fun getDownloadRequest(identity: String): DownloadRequest? {
+        val download = downloads[identity]
         return if (download != null && download.state != Download.STATE_FAILED) download.request else null
     }
 
@@ -79,7 +188,7 @@ class VideoDownloadTracker(downloadManager: DownloadManager) {
             downloadIndex.getDownloads().use { loadedDownloads ->
                 while (loadedDownloads.moveToNext()) {
                     val download = loadedDownloads.download
-                    downloads[download.request.uri] = download
+                    downloads[keyPolicy.identityOf(download.request)] = download
                 }
             }
         } catch (e: IOException) {
@@ -95,17 +204,22 @@ class VideoDownloadTracker(downloadManager: DownloadManager) {
             download: Download,
             finalException: Exception?
         ) {
-            downloads[download.request.uri] = download
+            val identity = keyPolicy.identityOf(download.request)
+            downloads[identity] = download
             for (listener in listeners) {
                 listener.onDownloadsChanged()
             }
+            notifyDownloadListeners(identity, download)
+            maybeScheduleProgress()
         }
 
         override fun onDownloadRemoved(downloadManager: DownloadManager, download: Download) {
-            downloads.remove(download.request.uri)
+            val identity = keyPolicy.identityOf(download.request)
+            downloads.remove(identity)
             for (listener in listeners) {
                 listener.onDownloadsChanged()
             }
+            notifyDownloadListeners(identity, null)
         }
     }
 
@@ -119,4 +233,24 @@ object GpDownloadState {
     const val DOWNLOADING = 1
     const val COMPLETED = 2
     const val ERROR = 3
+
+    @JvmStatic
+    fun of(download: Download?): Int {
+        return when (download?.state) {
+            Download.STATE_COMPLETED -> COMPLETED
+            Download.STATE_DOWNLOADING -> DOWNLOADING
+            Download.STATE_FAILED -> ERROR
+            else -> UNDOWNLOAD
+        }
+    }
+
+    /** The percentage downloaded of a running download, 0 until its length is known. */
+    @JvmStatic
+    fun progressOf(download: Download?): Double {
+        if (download == null || download.state != Download.STATE_DOWNLOADING) {
+            return 0.0
+        }
+        // C.PERCENTAGE_UNSET while the length is unknown.
+        return download.percentDownloaded.coerceAtLeast(0f).toDouble()
+    }
 }
@@ -0,0 +1,141 @@
+package io.flutter.plugins.videoplayer
+
+import android.net.Uri
+import com.google.android.exoplayer2.upstream.DataSource
+import com.google.android.exoplayer2.upstream.DataSpec
+import com.google.android.exoplayer2.upstream.DefaultHttpDataSource
+import com.google.android.exoplayer2.upstream.TransferListener
+import java.io.IOException
+import java.util.ArrayDeque
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * 网络请求
+ *
+ * The one HTTP stack of the plugin. Playback, preloads and downloads all fetch through
+ * [dataSourceFactory], whose [DefaultHttpDataSource]s share the process-wide connection pool of
+ * `HttpURLConnection`, so requests to the same host reuse kept-alive connections instead of paying
+ * for TCP and TLS setup per segment.
+ *
+ * Timeouts and headers may be changed at any time, requests started afterwards use them.
+ */
+class VideoHttpStack private constructor() {
+
+    companion object {
+        private const val USER_AGENT = "ExoPlayer"
+        private const val MAX_RECENT_REQUESTS = 50
+
+        const val DEFAULT_CONNECT_TIMEOUT_MS = 8000L
+        const val DEFAULT_READ_TIMEOUT_MS = 8000L
+
+        @Volatile
+        private var instance: VideoHttpStack? = null
+
+        fun getInstance() = instance ?: synchronized(this) {
+            instance ?: VideoHttpStack().also { instance = it }
+        }
+    }
+
+    private val requestCount = AtomicLong()
+    private val bytesReceived = AtomicLong()
+    private val recentRequests = ArrayDeque<Map<String, Any>>()
+
+    @Volatile
+    private var httpDataSourceFactory: DefaultHttpDataSource.Factory =
+        buildHttpDataSourceFactory(DEFAULT_CONNECT_TIMEOUT_MS, DEFAULT_READ_TIMEOUT_MS, emptyMap())
+
+    /** Always creates through the current factory, so reconfiguring applies to existing users. */
+    val dataSourceFactory: DataSource.Factory = DataSource.Factory {
+        MetricsDataSource(httpDataSourceFactory.createDataSource())
+    }
+
+    /** Applies new timeouts and replaces the headers added to every request. */
+    fun configure(connectTimeoutMs: Long, readTimeoutMs: Long, headers: Map<String, String>) {
+        httpDataSourceFactory = buildHttpDataSourceFactory(connectTimeoutMs, readTimeoutMs, headers)
+    }
+
+    private fun buildHttpDataSourceFactory(
+        connectTimeoutMs: Long,
+        readTimeoutMs: Long,
+        headers: Map<String, String>
+    ): DefaultHttpDataSource.Factory {
+        return DefaultHttpDataSource.Factory()
+            .setUserAgent(USER_AGENT)
+            .setConnectTimeoutMs(connectTimeoutMs.toInt())
+            .setReadTimeoutMs(readTimeoutMs.toInt())
+            .setDefaultRequestProperties(HashMap(headers))
+    }
+
+    /** Returns the totals since startup and the transfer of the most recent requests. */
+    fun getStats(): Map<String, Any> {
+        val requests = synchronized(recentRequests) { ArrayList(recentRequests) }
+        return mapOf(
+            "requests" to requestCount.get(),
+            "bytesReceived" to bytesReceived.get(),
+            "recentRequests" to requests
+        )
+    }
+
+    /** Records the transfer of every request, see [getStats]. */
+    private inner class MetricsDataSource(private val upstream: DataSource) : DataSource {
+        private var uri: Uri? = null
+        private var startMs = 0L
+        private var bytes = 0L
+
+        override fun addTransferListener(transferListener: TransferListener) {
+            upstream.addTransferListener(transferListener)
+        }
+
+        override fun open(dataSpec: DataSpec): Long {
+            uri = dataSpec.uri
+            startMs = System.currentTimeMillis()
+            bytes = 0L
+            requestCount.incrementAndGet()
+            try {
+                return upstream.open(dataSpec)
+            } catch (e: IOException) {
+                record(e)
+                throw e
+            }
+        }
+
+        override fun read(buffer: ByteArray, offset: Int, readLength: Int): Int {
+            val bytesRead = upstream.read(buffer, offset, readLength)
+            if (bytesRead > 0) {
+                bytes += bytesRead
+                bytesReceived.addAndGet(bytesRead.toLong())
+            }
+            return bytesRead
+        }
+
+        override fun getUri(): Uri? = upstream.uri
+
+        override fun getResponseHeaders(): Map<String, List<String>> = upstream.responseHeaders
+
+        override fun close() {
+            try {
+                upstream.close()
+            } finally {
+                record(null)
+            }
+        }
+
+        private fun record(error: IOException?) {
+            val requestUri = uri ?: return
+            uri = null
+            val request = HashMap<String, Any>()
+            request["url"] = requestUri.toString()
+            request["bytes"] = bytes
+            request["durationMs"] = System.currentTimeMillis() - startMs
+            if (error != null) {
+                request["error"] = error.toString()
+            }
+            synchronized(recentRequests) {
+                recentRequests.addLast(request)
+                if (recentRequests.size > MAX_RECENT_REQUESTS) {
+                    recentRequests.removeFirst()
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package io.flutter.plugins.videoplayer
+
+import android.net.Uri
+import android.os.SystemClock
+import com.google.android.exoplayer2.C
+import com.google.android.exoplayer2.source.hls.HlsDataSourceFactory
+import com.google.android.exoplayer2.source.hls.playlist.DefaultHlsPlaylistParserFactory
+import com.google.android.exoplayer2.source.hls.playlist.HlsMasterPlaylist
+import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist
+import com.google.android.exoplayer2.source.hls.playlist.HlsPlaylist
+import com.google.android.exoplayer2.source.hls.playlist.HlsPlaylistParserFactory
+import com.google.android.exoplayer2.upstream.DataSource
+import com.google.android.exoplayer2.upstream.DataSpec
+import com.google.android.exoplayer2.upstream.ParsingLoadable
+import com.google.android.exoplayer2.upstream.TransferListener
+import java.io.ByteArrayOutputStream
+import java.util.Collections
+import java.util.LinkedHashMap
+import java.util.WeakHashMap
+
+/**
+ * 清单缓存
+ *
+ * Shares manifests between players opening the same url. Fetched manifests are kept for [ttlMs],
+ * and HLS master playlists are parsed only once while cached.
+ *
+ * Manifests of live streams are never cached, since the player has to refresh them: HLS media
+ * playlists without `#EXT-X-ENDLIST`, dynamic DASH manifests and live SmoothStreaming manifests.
+ */
+class VideoManifestCache private constructor() {
+
+    companion object {
+        const val DEFAULT_TTL_MS = 30_000L
+        private const val MAX_ENTRIES = 32
+
+        @Volatile
+        private var instance: VideoManifestCache? = null
+
+        fun getInstance() = instance ?: synchronized(this) {
+            instance ?: VideoManifestCache().also { instance = it }
+        }
+    }
+
+    private class Entry(val bytes: ByteArray, val uri: Uri, val expiresAtMs: Long) {
+        @Volatile
+        var parsed: HlsPlaylist? = null
+    }
+
+    /** Cached manifests by requested and by final url, least recently used first. */
+    private val entries = object : LinkedHashMap<Uri, Entry>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Uri, Entry>?) = size > MAX_ENTRIES
+    }
+
+    private val variantTables: MutableMap<HlsMasterPlaylist, Map<Int, String>> =
+        Collections.synchronizedMap(WeakHashMap())
+
+    /** How long a fetched manifest is reused, 0 disables the cache. */
+    @Volatile
+    var ttlMs = DEFAULT_TTL_MS
+
+    /** Reads manifests through the cache, for the manifest data source of DASH and SmoothStreaming. */
+    fun buildDataSourceFactory(upstreamFactory: DataSource.Factory): DataSource.Factory {
+        return DataSource.Factory { ManifestDataSource(upstreamFactory.createDataSource()) }
+    }
+
+    /**
+     * Reads manifests through the cache and media directly from [upstreamFactory], telling them
+     * apart by url, for downloaders that read both through one data source.
+     */
+    fun buildSeedingDataSourceFactory(upstreamFactory: DataSource.Factory): DataSource.Factory {
+        return DataSource.Factory {
+            RoutingDataSource(ManifestDataSource(upstreamFactory.createDataSource()), upstreamFactory.createDataSource())
+        }
+    }
+
+    /**
+     * Reads HLS playlists through the cache from [manifestFactory], and media segments directly
+     * from [mediaFactory].
+     */
+    fun buildHlsDataSourceFactory(
+        manifestFactory: DataSource.Factory,
+        mediaFactory: DataSource.Factory
+    ): HlsDataSourceFactory {
+        return HlsDataSourceFactory { dataType ->
+            if (dataType == C.DATA_TYPE_MANIFEST) {
+                ManifestDataSource(manifestFactory.createDataSource())
+            } else {
+                mediaFactory.createDataSource()
+            }
+        }
+    }
+
+    /** Reuses the parsed master playlist of a cached manifest. */
+    val hlsPlaylistParserFactory: HlsPlaylistParserFactory = object : HlsPlaylistParserFactory {
+        private val delegate = DefaultHlsPlaylistParserFactory()
+
+        override fun createPlaylistParser(): ParsingLoadable.Parser<HlsPlaylist> {
+            val parser = delegate.createPlaylistParser()
+            return ParsingLoadable.Parser { uri, inputStream ->
+                val entry = get(uri)
+                val cached = entry?.parsed
+                if (cached != null) {
+                    return@Parser cached
+                }
+                val playlist = parser.parse(uri, inputStream)
+                if (playlist is HlsMasterPlaylist) {
+                    entry?.parsed = playlist
+                }
+                playlist
+            }
+        }
+
+        override fun createPlaylistParser(
+            masterPlaylist: HlsMasterPlaylist,
+            previousMediaPlaylist: HlsMediaPlaylist?
+        ): ParsingLoadable.Parser<HlsPlaylist> {
+            return delegate.createPlaylistParser(masterPlaylist, previousMediaPlaylist)
+        }
+    }
+
+    /** The resolution of every variant by index, computed once per master playlist. */
+    fun getVariantTable(masterPlaylist: HlsMasterPlaylist): Map<Int, String> {
+        variantTables[masterPlaylist]?.let { return it }
+        val table = HashMap<Int, String>()
+        for ((index, variant) in masterPlaylist.variants.withIndex()) {
+            table[index] = variant.format.width.toString() + "x" + variant.format.height
+        }
+        variantTables[masterPlaylist] = table
+        return table
+    }
+
+    /** Drops all cached manifests, such as under memory pressure. */
+    fun clear() {
+        synchronized(entries) {
+            entries.clear()
+        }
+    }
+
+    private fun get(uri: Uri): Entry? = synchronized(entries) {
+        val entry = entries[uri] ?: return null
+        if (SystemClock.elapsedRealtime() >= entry.expiresAtMs) {
+            entries.remove(uri)
+            return null
+        }
+        entry
+    }
+
+    private fun put(requestUri: Uri, finalUri: Uri, bytes: ByteArray) {
+        val ttlMs = this.ttlMs
+        if (ttlMs <= 0 || !isCacheable(bytes)) {
+            return
+        }
+        val entry = Entry(bytes, finalUri, SystemClock.elapsedRealtime() + ttlMs)
+        synchronized(entries) {
+            entries[requestUri] = entry
+            entries[finalUri] = entry
+        }
+    }
+
+    private fun isCacheable(bytes: ByteArray): Boolean {
+        val manifest = String(bytes, Charsets.UTF_8)
+        return when {
+            manifest.contains("#EXTM3U") -> manifest.contains("#EXT-X-STREAM-INF")
+                || manifest.contains("#EXT-X-ENDLIST")
+            manifest.contains("<MPD") -> !manifest.contains("type=\"dynamic\"")
+            else -> !manifest.contains("IsLive=\"TRUE\"", ignoreCase = true)
+        }
+    }
+
+    /** Opens manifest urls with [manifestSource] and all others with [mediaSource]. */
+    private class RoutingDataSource(
+        private val manifestSource: DataSource,
+        private val mediaSource: DataSource
+    ) : DataSource {
+        private var openSource: DataSource? = null
+
+        override fun addTransferListener(transferListener: TransferListener) {
+            manifestSource.addTransferListener(transferListener)
+            mediaSource.addTransferListener(transferListener)
+        }
+
+        override fun open(dataSpec: DataSpec): Long {
+            val source = if (VideoCacheManager.inferMimeType(dataSpec.uri) != null) manifestSource else mediaSource
+            openSource = source
+            return source.open(dataSpec)
+        }
+
+        override fun read(buffer: ByteArray, offset: Int, readLength: Int): Int =
+            openSource!!.read(buffer, offset, readLength)
+
+        override fun getUri(): Uri? = openSource?.uri
+
+        override fun getResponseHeaders(): Map<String, List<String>> =
+            openSource?.responseHeaders ?: emptyMap()
+
+        override fun close() {
+            val source = openSource ?: return
+            openSource = null
+            source.close()
+        }
+    }
+
+    /** Serves a whole manifest from the cache, or fetches it whole and caches it. */
+    private inner class ManifestDataSource(private val upstream: DataSource) : DataSource {
+        private var data: ByteArray? = null
+        private var readPosition = 0
+        private var uri: Uri? = null
+        private var responseHeaders: Map<String, List<String>> = emptyMap()
+
+        override fun addTransferListener(transferListener: TransferListener) {
+            upstream.addTransferListener(transferListener)
+        }
+
+        override fun open(dataSpec: DataSpec): Long {
+            val cacheable = dataSpec.position == 0L &&
+                dataSpec.length == C.LENGTH_UNSET.toLong() &&
+                dataSpec.httpMethod == DataSpec.HTTP_METHOD_GET
+            val entry = if (cacheable) get(dataSpec.uri) else null
+            val bytes = if (entry != null) {
+                uri = entry.uri
+                entry.bytes
+            } else {
+                fetch(dataSpec).also {
+                    if (cacheable) {
+                        put(dataSpec.uri, uri!!, it)
+                    }
+                }
+            }
+            data = bytes
+            readPosition = 0
+            return bytes.size.toLong()
+        }
+
+        private fun fetch(dataSpec: DataSpec): ByteArray {
+            try {
+                upstream.open(dataSpec)
+                val output = ByteArrayOutputStream()
+                val buffer = ByteArray(4096)
+                while (true) {
+                    val bytesRead = upstream.read(buffer, 0, buffer.size)
+                    if (bytesRead == C.RESULT_END_OF_INPUT) {
+                        break
+                    }
+                    output.write(buffer, 0, bytesRead)
+                }
+                uri = upstream.uri ?: dataSpec.uri
+                responseHeaders = upstream.responseHeaders
+                return output.toByteArray()
+            } finally {
+                upstream.close()
+            }
+        }
+
+        override fun read(buffer: ByteArray, offset: Int, readLength: Int): Int {
+            if (readLength == 0) {
+                return 0
+            }
+            val bytes = data!!
+            val remaining = bytes.size - readPosition
+            if (remaining == 0) {
+                return C.RESULT_END_OF_INPUT
+            }
+            val bytesToRead = Math.min(remaining, readLength)
+            System.arraycopy(bytes, readPosition, buffer, offset, bytesToRead)
+            readPosition += bytesToRead
+            return bytesToRead
+        }
+
+        override fun getUri(): Uri? = uri
+
+        override fun getResponseHeaders(): Map<String, List<String>> = responseHeaders
+
+        override fun close() {
+            data = null
+            uri = null
+            responseHeaders = emptyMap()
+        }
+    }
+}
@@ -4,28 +4,36 @@
 
 package io.flutter.plugins.videoplayer;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.LongSparseArray;
 import android.view.Surface;
 
 import com.google.android.exoplayer2.C;
-import com.google.android.exoplayer2.DefaultRenderersFactory;
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.MediaItem;
 import com.google.android.exoplayer2.PlaybackException;
 import com.google.android.exoplayer2.PlaybackParameters;
 import com.google.android.exoplayer2.Player;
 import com.google.android.exoplayer2.RenderersFactory;
+import com.google.android.exoplayer2.SeekParameters;
 import com.google.android.exoplayer2.SimpleExoPlayer;
 import com.google.android.exoplayer2.Timeline;
+import com.google.android.exoplayer2.analytics.AnalyticsListener;
 import com.google.android.exoplayer2.audio.AudioAttributes;
 import com.google.android.exoplayer2.offline.Download;
 import com.google.android.exoplayer2.offline.DownloadHelper;
 import com.google.android.exoplayer2.offline.DownloadRequest;
 import com.google.android.exoplayer2.offline.DownloadService;
+import com.google.android.exoplayer2.source.MediaLoadData;
 import com.google.android.exoplayer2.source.MediaSource;
 import com.google.android.exoplayer2.source.ProgressiveMediaSource;
+import com.google.android.exoplayer2.source.TrackGroup;
 import com.google.android.exoplayer2.source.TrackGroupArray;
 import com.google.android.exoplayer2.source.dash.DashMediaSource;
 import com.google.android.exoplayer2.source.dash.DefaultDashChunkSource;
@@ -39,7 +47,6 @@ import com.google.android.exoplayer2.trackselection.MappingTrackSelector;
 import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DefaultDataSourceFactory;
-import com.google.android.exoplayer2.upstream.DefaultHttpDataSource;
 import com.google.android.exoplayer2.util.Util;
 
 import org.jetbrains.annotations.NotNull;
@@ -51,8 +58,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import io.flutter.plugin.common.EventChannel;
 import io.flutter.plugin.common.MethodCall;
@@ -83,17 +90,233 @@ public class VideoPlayerPlugin implements MethodCallHandler {
         this.registrar = registrar;
         this.videoPlayers = new LongSparseArray<>();
         this.videoDownloadManager = VideoDownloadManager.Companion.getInstance(registrar.activeContext().getApplicationContext());
+        this.positionUpdateScheduler = new PositionUpdateScheduler();
+        this.bufferBudget = new BufferBudget();
+        this.playerPool = new VideoPlayerPool(registrar.context(), bufferBudget);
+        this.decoderGovernor = new DecoderGovernor();
+        this.videoCacheManager = VideoCacheManager.Companion.getInstance(registrar.context());
+        this.binaryEventChannel = new BinaryEventChannel(registrar.messenger());
+        new EventChannel(registrar.messenger(), "flutter.io/videoPlayer/memoryEvents").setStreamHandler(
+                new EventChannel.StreamHandler() {
+                    @Override
+                    public void onListen(Object o, EventChannel.EventSink sink) {
+                        memoryEventSink = sink;
+                    }
+
+                    @Override
+                    public void onCancel(Object o) {
+                        memoryEventSink = null;
+                    }
+                });
+        registrar.context().registerComponentCallbacks(memoryCallbacks);
+    }
+
+    /** Releases idle players and shared caches. */
+    private static final int TRIM_STAGE_CACHES = 1;
+    /** Also stops paused players loading ahead, and suspends those off-screen. */
+    private static final int TRIM_STAGE_PAUSED_BUFFERS = 2;
+    /** Also suspends all players that are not playing, releasing their codecs. */
+    private static final int TRIM_STAGE_CODECS = 3;
+
+    private EventChannel.EventSink memoryEventSink;
+
+    private final ComponentCallbacks2 memoryCallbacks = new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int level) {
+            trimMemory(level, trimStageOf(level));
+        }
+
+        @Override
+        public void onLowMemory() {
+            trimMemory(TRIM_MEMORY_COMPLETE, TRIM_STAGE_CODECS);
+        }
+
+        @Override
+        public void onConfigurationChanged(@NotNull Configuration newConfig) {
+        }
+    };
+
+    private static int trimStageOf(int level) {
+        switch (level) {
+            case ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE:
+            case ComponentCallbacks2.TRIM_MEMORY_BACKGROUND:
+                return TRIM_STAGE_CACHES;
+            case ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW:
+            case ComponentCallbacks2.TRIM_MEMORY_MODERATE:
+                return TRIM_STAGE_PAUSED_BUFFERS;
+            case ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL:
+            case ComponentCallbacks2.TRIM_MEMORY_COMPLETE:
+                return TRIM_STAGE_CODECS;
+            default:
+                // TRIM_MEMORY_UI_HIDDEN only tells the UI went away.
+                return 0;
+        }
+    }
+
+    /** Releases memory in stages as pressure rises, and reports each trim to Dart. */
+    private void trimMemory(int level, int stage) {
+        if (stage == 0) {
+            return;
+        }
+        playerPool.clear();
+        VideoManifestCache.Companion.getInstance().clear();
+        int suspendedPlayers = 0;
+        if (stage >= TRIM_STAGE_PAUSED_BUFFERS) {
+            for (int i = 0; i < videoPlayers.size(); i++) {
+                if (videoPlayers.valueAt(i).trimMemory(stage >= TRIM_STAGE_CODECS)) {
+                    suspendedPlayers++;
+                }
+            }
+        }
+        if (memoryEventSink != null) {
+            Map<String, Object> event = new HashMap<>();
+            event.put("level", level);
+            event.put("stage", stage);
+            event.put("suspendedPlayers", suspendedPlayers);
+            memoryEventSink.success(event);
+        }
     }
 
     private final LongSparseArray<VideoPlayer> videoPlayers;
+    /** Calls for players whose texture exists but which are still being set up, in order. */
+    private final LongSparseArray<List<PendingCall>> pendingCalls = new LongSparseArray<>();
+    private final ExecutorService setupExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
     private final Registrar registrar;
     private final VideoDownloadManager videoDownloadManager;
+    private final PositionUpdateScheduler positionUpdateScheduler;
+    private final BufferBudget bufferBudget;
+    private final DecoderGovernor decoderGovernor;
+    private final VideoPlayerPool playerPool;
+    private final VideoCacheManager videoCacheManager;
+    private final BinaryEventChannel binaryEventChannel;
+
+    private static VideoPlayerPool.BufferDurations parseBufferDurations(Map<String, Object> options) {
+        if (options == null) {
+            return VideoPlayerPool.BufferDurations.DEFAULT;
+        }
+        return new VideoPlayerPool.BufferDurations(
+                ((Number) options.get("minBufferMs")).intValue(),
+                ((Number) options.get("maxBufferMs")).intValue(),
+                ((Number) options.get("bufferForPlaybackMs")).intValue(),
+                ((Number) options.get("bufferForPlaybackAfterRebufferMs")).intValue(),
+                ((Number) options.get("backBufferMs")).intValue());
+    }
+
+    private static MediaItem.LiveConfiguration parseLiveConfiguration(Map<String, Object> options) {
+        if (options == null) {
+            return null;
+        }
+        return new MediaItem.LiveConfiguration(
+                parseTime(options.get("targetOffsetMs")),
+                parseTime(options.get("minOffsetMs")),
+                parseTime(options.get("maxOffsetMs")),
+                parseRate(options.get("minPlaybackSpeed")),
+                parseRate(options.get("maxPlaybackSpeed")));
+    }
+
+    private static long parseTime(Object value) {
+        return value != null ? ((Number) value).longValue() : C.TIME_UNSET;
+    }
+
+    private static float parseRate(Object value) {
+        return value != null ? ((Number) value).floatValue() : C.RATE_UNSET;
+    }
+
+    /**
+     * Starts the player of a texture {@code create} already replied with, then replays the calls made
+     * for it in the meantime.
+     */
+    private void finishCreate(
+            MethodCall createCall,
+            TextureRegistry.SurfaceTextureEntry handle,
+            EventChannel eventChannel,
+            BatchingEventSink eventSink,
+            VideoPlayer player) {
+        List<PendingCall> queuedCalls = pendingCalls.get(handle.id());
+        if (queuedCalls == null) {
+            // All players were disposed while this one was set up.
+            eventChannel.setStreamHandler(null);
+            handle.release();
+            return;
+        }
+        try {
+            player.start(createCall.hasArgument("startupPolicy")
+                    ? ((Number) createCall.argument("startupPolicy")).intValue()
+                    : StartupTrackSelectionFactory.POLICY_BALANCED);
+            if (Boolean.TRUE.equals(createCall.argument("binaryEvents"))) {
+                player.setBinaryEventChannel(binaryEventChannel);
+            }
+            if (createCall.hasArgument("viewportWidth")) {
+                player.setViewportSize(
+                        ((Number) createCall.argument("viewportWidth")).intValue(),
+                        ((Number) createCall.argument("viewportHeight")).intValue());
+            }
+            player.initDownloadState(videoDownloadManager);
+        } catch (RuntimeException e) {
+            reportCreateFailure(handle, eventSink, e);
+            // Also releases the texture and the event channel.
+            player.dispose();
+            return;
+        }
+        videoPlayers.put(handle.id(), player);
+        pendingCalls.remove(handle.id());
+        for (PendingCall pendingCall : queuedCalls) {
+            onMethodCall(pendingCall.call, pendingCall.result);
+        }
+    }
+
+    /** Reports a player that could not be built and releases its texture and event channel. */
+    private void failCreate(
+            TextureRegistry.SurfaceTextureEntry handle,
+            EventChannel eventChannel,
+            BatchingEventSink eventSink,
+            RuntimeException e) {
+        reportCreateFailure(handle, eventSink, e);
+        eventChannel.setStreamHandler(null);
+        handle.release();
+    }
+
+    /** Reports a player that could not be set up, to the calls made for it and on its event channel. */
+    private void reportCreateFailure(
+            TextureRegistry.SurfaceTextureEntry handle, BatchingEventSink eventSink, RuntimeException e) {
+        List<PendingCall> queuedCalls = pendingCalls.get(handle.id());
+        pendingCalls.remove(handle.id());
+        if (queuedCalls != null) {
+            String message = "Video player could not be created: " + e;
+            for (PendingCall pendingCall : queuedCalls) {
+                pendingCall.result.error("VideoError", message, null);
+            }
+            eventSink.error("VideoError", message, null);
+        }
+    }
 
     private void disposeAllPlayers() {
         for (int i = 0; i < videoPlayers.size(); i++) {
             videoPlayers.valueAt(i).dispose();
         }
         videoPlayers.clear();
+        for (int i = 0; i < pendingCalls.size(); i++) {
+            long textureId = pendingCalls.keyAt(i);
+            for (PendingCall pendingCall : pendingCalls.valueAt(i)) {
+                pendingCall.result.error(
+                        "Unknown textureId",
+                        "No video player associated with texture id " + textureId,
+                        null);
+            }
+        }
+        pendingCalls.clear();
+    }
+
+    /** A call for a player that is still being set up. */
+    private static final class PendingCall {
+        final MethodCall call;
+        final Result result;
+
+        PendingCall(MethodCall call, Result result) {
+            this.call = call;
+            this.result = result;
+        }
     }
 
     private void onDestroy() {
@@ -102,6 +325,8 @@ public class VideoPlayerPlugin implements MethodCallHandler {
         // be replaced with just asserting that videoPlayers.isEmpty().
         // https://github.com/flutter/flutter/issues/20989 tracks this.
         disposeAllPlayers();
+        playerPool.clear();
+        registrar.context().unregisterComponentCallbacks(memoryCallbacks);
     }
 
     @Override
@@ -116,12 +341,33 @@ public class VideoPlayerPlugin implements MethodCallHandler {
                 disposeAllPlayers();
                 break;
             case "create": {
+                int startupPolicy = call.hasArgument("startupPolicy")
+                        ? ((Number) call.argument("startupPolicy")).intValue()
+                        : StartupTrackSelectionFactory.POLICY_BALANCED;
+                if (!StartupTrackSelectionFactory.isPolicy(startupPolicy)) {
+                    result.error("Invalid argument", "Unknown startup policy " + startupPolicy, null);
+                    break;
+                }
                 TextureRegistry.SurfaceTextureEntry handle = textures.createSurfaceTexture();
                 EventChannel eventChannel =
                         new EventChannel(
                                 registrar.messenger(), "flutter.io/videoPlayer/videoEvents" + handle.id());
+                // Dart listens right after create returns, events are queued until the player exists.
+                BatchingEventSink eventSink = new BatchingEventSink();
+                eventChannel.setStreamHandler(
+                        new EventChannel.StreamHandler() {
+                            @Override
+                            public void onListen(Object o, EventChannel.EventSink sink) {
+                                eventSink.setDelegate(sink);
+                            }
 
-                VideoPlayer player;
+                            @Override
+                            public void onCancel(Object o) {
+                                eventSink.setDelegate(null);
+                            }
+                        });
+
+                String dataSource;
                 if (call.argument("asset") != null) {
                     String assetLookupKey;
                     if (call.argument("package") != null) {
@@ -130,25 +376,154 @@ public class VideoPlayerPlugin implements MethodCallHandler {
                     } else {
                         assetLookupKey = registrar.lookupKeyForAsset(call.argument("asset"));
                     }
-                    player =
-                            new VideoPlayer(
-                                    registrar.context(),
-                                    eventChannel,
-                                    handle,
-                                    "asset:///" + assetLookupKey,
-                                    result, videoDownloadManager);
-                    videoPlayers.put(handle.id(), player);
+                    dataSource = "asset:///" + assetLookupKey;
                 } else {
-                    player =
-                            new VideoPlayer(
-                                    registrar.context(), eventChannel, handle, call.argument("uri"), result, videoDownloadManager);
-                    videoPlayers.put(handle.id(), player);
+                    dataSource = call.argument("uri");
                 }
-                player.initDownloadState(videoDownloadManager);
+
+                pendingCalls.put(handle.id(), new ArrayList<>());
+                Map<String, Object> reply = new HashMap<>();
+                reply.put("textureId", handle.id());
+                result.success(reply);
+
+                setupExecutor.execute(() -> {
+                    // Resolving the media opens and reads the download index the first time, the slowest
+                    // part of setting up a player. The download manager still reports on the main looper.
+                    VideoPlayer player;
+                    try {
+                        player = new VideoPlayer(
+                                registrar.context(), eventChannel, eventSink, handle, dataSource,
+                                videoDownloadManager, positionUpdateScheduler, playerPool,
+                                parseBufferDurations(call.argument("bufferOptions")),
+                                parseLiveConfiguration(call.argument("liveOptions")),
+                                call.argument("contentId"), videoCacheManager, decoderGovernor);
+                    } catch (RuntimeException e) {
+                        mainHandler.post(() -> failCreate(handle, eventChannel, eventSink, e));
+                        return;
+                    }
+                    mainHandler.post(() -> finishCreate(call, handle, eventChannel, eventSink, player));
+                });
+                break;
+            }
+            case "preload": {
+                List<String> uris = call.argument("uris");
+                Map<String, String> contentIds = call.argument("contentIds");
+                List<Uri> preloadUris = new ArrayList<>();
+                Map<Uri, String> preloadContentIds = new HashMap<>();
+                for (String uri : uris) {
+                    Uri preloadUri = Uri.parse(uri);
+                    preloadUris.add(preloadUri);
+                    if (contentIds != null && contentIds.containsKey(uri)) {
+                        preloadContentIds.put(preloadUri, contentIds.get(uri));
+                    }
+                }
+                videoCacheManager.preload(
+                        preloadUris, preloadContentIds, ((Number) call.argument("maxBytes")).longValue());
+                result.success(null);
                 break;
             }
+            case "configurePlaybackCache":
+                videoCacheManager.configurePlaybackCache(
+                        call.argument("enabled"), ((Number) call.argument("maxBytes")).longValue());
+                result.success(null);
+                break;
+            case "getPlaybackCacheStats":
+                result.success(videoCacheManager.getPlaybackCacheStats());
+                break;
+            case "setDownloadQuota":
+                videoDownloadManager.getDownloadQuotaManager().setQuota(
+                        ((Number) call.argument("maxBytes")).longValue(), call.argument("policy"));
+                result.success(null);
+                break;
+            case "pinDownload":
+                // Downloads are pinned by identity, the same a player with this uri and content id uses.
+                videoDownloadManager.getDownloadQuotaManager().setPinned(
+                        videoDownloadManager.getDownloadTracker().identityOf(
+                                Uri.parse(call.argument("uri")), call.argument("contentId")),
+                        call.argument("pinned"));
+                result.success(null);
+                break;
+            case "getDownloadUsage":
+                result.success(videoDownloadManager.getDownloadQuotaManager().getUsage());
+                break;
+            case "downloadStates": {
+                List<String> uris = call.argument("uris");
+                Map<String, String> contentIds = call.argument("contentIds");
+                List<Uri> downloadUris = new ArrayList<>();
+                Map<Uri, String> downloadContentIds = new HashMap<>();
+                for (String uri : uris) {
+                    Uri downloadUri = Uri.parse(uri);
+                    downloadUris.add(downloadUri);
+                    if (contentIds != null && contentIds.containsKey(uri)) {
+                        downloadContentIds.put(downloadUri, contentIds.get(uri));
+                    }
+                }
+                result.success(videoDownloadManager.getDownloadTracker()
+                        .getDownloadStates(downloadUris, downloadContentIds));
+                break;
+            }
+            case "setDownloadProgressInterval":
+                videoDownloadManager.getDownloadTracker().setProgressIntervalMs(
+                        ((Number) call.argument("interval")).longValue());
+                result.success(null);
+                break;
+            case "configureDownloads": {
+                int segmentThreads = ((Number) call.argument("segmentThreads")).intValue();
+                if (segmentThreads < 1) {
+                    result.error("Invalid argument", "segmentThreads must be at least 1, got " + segmentThreads, null);
+                    break;
+                }
+                videoDownloadManager.configureDownloads(
+                        ((Number) call.argument("maxParallelDownloads")).intValue(),
+                        segmentThreads,
+                        ((Number) call.argument("maxBytesPerSecond")).longValue());
+                result.success(null);
+                break;
+            }
+            case "configureHttp": {
+                Map<String, String> headers = call.argument("headers");
+                VideoHttpStack.Companion.getInstance().configure(
+                        ((Number) call.argument("connectTimeout")).longValue(),
+                        ((Number) call.argument("readTimeout")).longValue(),
+                        headers != null ? headers : Collections.emptyMap());
+                result.success(null);
+                break;
+            }
+            case "configureCacheKeys": {
+                List<String> ignoredQueryParameters = call.argument("ignoredQueryParameters");
+                videoDownloadManager.getKeyPolicy().configure(ignoredQueryParameters);
+                videoDownloadManager.getDownloadTracker().reindex();
+                result.success(null);
+                break;
+            }
+            case "getHttpStats":
+                result.success(VideoHttpStack.Companion.getInstance().getStats());
+                break;
+            case "configureManifestCache":
+                VideoManifestCache.Companion.getInstance().setTtlMs(((Number) call.argument("ttl")).longValue());
+                result.success(null);
+                break;
+            case "setMaxActiveDecoders":
+                decoderGovernor.setMaxActive(((Number) call.argument("maxActive")).intValue());
+                result.success(null);
+                break;
+            case "setBufferBudget":
+                bufferBudget.setTotalBytes(((Number) call.argument("maxBytes")).longValue());
+                result.success(null);
+                break;
+            case "configurePlayerPool":
+                playerPool.configure(
+                        ((Number) call.argument("maxSize")).intValue(),
+                        ((Number) call.argument("idleTimeout")).longValue());
+                result.success(null);
+                break;
             default: {
                 long textureId = ((Number) call.argument("textureId")).longValue();
+                List<PendingCall> queuedCalls = pendingCalls.get(textureId);
+                if (queuedCalls != null) {
+                    queuedCalls.add(new PendingCall(call, result));
+                    return;
+                }
                 VideoPlayer player = videoPlayers.get(textureId);
                 if (player == null) {
                     result.error(
@@ -183,13 +558,32 @@ public class VideoPlayerPlugin implements MethodCallHandler {
                 break;
             case "seekTo":
                 int location = ((Number) call.argument("location")).intValue();
-                player.seekTo(location);
+                int mode = call.hasArgument("mode") ? ((Number) call.argument("mode")).intValue() : 0;
+                if (mode < 0 || mode >= SEEK_MODES.length) {
+                    result.error("Invalid argument", "Unknown seek mode " + mode, null);
+                    break;
+                }
+                player.seekTo(location, SEEK_MODES[mode]);
+                result.success(null);
+                break;
+            case "setScrubbing":
+                player.setScrubbing(Boolean.TRUE.equals(call.argument("scrubbing")));
                 result.success(null);
                 break;
             case "position":
                 result.success(player.getPosition());
                 player.sendBufferingUpdate();
                 break;
+            case "setPositionUpdateInterval":
+                player.setPositionUpdateInterval(((Number) call.argument("interval")).longValue());
+                result.success(null);
+                break;
+            case "setViewportSize":
+                player.setViewportSize(
+                        ((Number) call.argument("width")).intValue(),
+                        ((Number) call.argument("height")).intValue());
+                result.success(null);
+                break;
             case "dispose":
                 player.dispose();
                 videoPlayers.remove(textureId);
@@ -199,10 +593,49 @@ public class VideoPlayerPlugin implements MethodCallHandler {
                 player.switchResolution(((Number) call.argument("trackIndex")).intValue());
                 result.success(null);
                 break;
+            case "setPlaylist":
+                player.setPlaylist(call.argument("uris"), ((Number) call.argument("startIndex")).intValue());
+                result.success(null);
+                break;
+            case "addToPlaylist":
+                player.addToPlaylist(call.argument("uri"), ((Number) call.argument("index")).intValue());
+                result.success(null);
+                break;
+            case "removeFromPlaylist":
+                player.removeFromPlaylist(((Number) call.argument("index")).intValue());
+                result.success(null);
+                break;
+            case "skipTo":
+                player.skipTo(((Number) call.argument("index")).intValue());
+                result.success(null);
+                break;
+            case "getMetrics":
+                result.success(player.getMetrics());
+                break;
+            case "setMetricsInterval":
+                player.setMetricsInterval(((Number) call.argument("interval")).longValue());
+                result.success(null);
+                break;
+            case "setVisible":
+                player.setVisible(Boolean.TRUE.equals(call.argument("visible")));
+                result.success(null);
+                break;
+            case "setResolutionPolicy":
+                player.setResolutionPolicy(
+                        ((Number) call.argument("maxBitrate")).intValue(),
+                        ((Number) call.argument("maxHeight")).intValue(),
+                        ((Number) call.argument("minBitrate")).intValue(),
+                        ((Number) call.argument("minHeight")).intValue(),
+                        ((Number) call.argument("pinnedTrackIndex")).intValue());
+                result.success(null);
+                break;
             case "download": //缓存视频
                 int trackIndex = ((Number) call.argument("trackIndex")).intValue();
                 String name = call.argument("name");
-                player.download(trackIndex, name);
+                int priority = call.hasArgument("priority")
+                        ? ((Number) call.argument("priority")).intValue()
+                        : VideoDownloadScheduler.DEFAULT_PRIORITY;
+                player.download(trackIndex, name, priority);
                 result.success(null);
                 break;
             case "removeDownload": //删除视频
@@ -220,54 +653,154 @@ public class VideoPlayerPlugin implements MethodCallHandler {
         }
     }
 
-    private static class VideoPlayer {
-
-        private final SimpleExoPlayer exoPlayer;
-        private final DefaultTrackSelector trackSelector;
+    /** The seek parameters of each Dart SeekMode, by index. */
+    private static final SeekParameters[] SEEK_MODES = {
+            SeekParameters.EXACT, SeekParameters.PREVIOUS_SYNC, SeekParameters.NEXT_SYNC, SeekParameters.CLOSEST_SYNC
+    };
+
+    private static class VideoPlayer implements DecoderGovernor.Client {
+
+        /** The least time between two seeks while scrubbing. */
+        private static final long SCRUB_SEEK_INTERVAL_MS = 100;
+        /** How long a scrub seek waits at most for the previous one to finish buffering. */
+        private static final long SCRUB_SEEK_MAX_WAIT_MS = 500;
+        /** How often the live offset is reported while a live stream is loaded. */
+        private static final long LIVE_OFFSET_INTERVAL_MS = 1000;
+
+        private final VideoPlayerPool playerPool;
+        private final VideoPlayerPool.PlayerComponents components;
+        private final MediaSource mediaSource;
+        private VideoPlayerPool.PooledPlayer pooledPlayer;
+        private SimpleExoPlayer exoPlayer;
+        private DefaultTrackSelector trackSelector;
         private final DataSource.Factory dataSourceFactory;
-        private final RenderersFactory renderersFactory;
+        private final VideoCacheManager videoCacheManager;
+        private final MediaItem.LiveConfiguration liveConfiguration;
+        private RenderersFactory renderersFactory;
+        private Player.Listener playerListener;
         private Surface surface;
         private final TextureRegistry.SurfaceTextureEntry textureEntry;
-        private final QueuingEventSink eventSink = new QueuingEventSink();
+        private final BatchingEventSink eventSink;
         private final EventChannel eventChannel;
         private boolean isInitialized = false;
         private final Uri dataSourceUri;
+        /** Identifies the media instead of its url, for downloads and caching. May be null. */
+        private final String contentId;
+        private final String downloadIdentity;
+        private final VideoManifestCache manifestCache = VideoManifestCache.Companion.getInstance();
+        private HlsMasterPlaylist lastMasterPlaylist;
+        private Map<Integer, String> lastResolutions;
         private DownloadHelper downloadHelper;
         private final Context context;
         private final VideoDownloadManager videoDownloadManager;
-        private Timer refreshProgressTimer;
+        private final VideoDownloadTracker.DownloadListener downloadListener = this::onDownloadChanged;
+        private final PositionUpdateScheduler positionUpdateScheduler;
+        private final PositionUpdateScheduler.Listener positionUpdateListener = this::sendPositionUpdate;
+        private final Handler scrubHandler = new Handler(Looper.getMainLooper());
+        private final Handler mainHandler = new Handler(Looper.getMainLooper());
+        private final Runnable scrubSeek = this::seekToScrubTarget;
+        private final DecoderGovernor decoderGovernor;
+        private boolean suspended;
+        private boolean visible = true;
+        private boolean scrubbing;
+        private boolean scrubSeekScheduled;
+        private long scrubTargetMs = C.TIME_UNSET;
+        private long lastScrubSeekAtMs;
+        private final PlaybackMetricsCollector metricsCollector = new PlaybackMetricsCollector();
+        private final PositionUpdateScheduler.Listener metricsListener = this::sendMetrics;
+        private final PositionUpdateScheduler.Listener liveOffsetListener = this::sendLiveOffset;
+        private boolean liveOffsetSubscribed;
+        private long lastSentPosition = C.TIME_UNSET;
+        private long lastSentBufferedPosition = C.TIME_UNSET;
+        private BinaryEventChannel binaryEventChannel;
+        private int viewportWidth = Integer.MAX_VALUE;
+        private int viewportHeight = Integer.MAX_VALUE;
+        private int maxBitrate = Integer.MAX_VALUE;
+        private int maxHeight = Integer.MAX_VALUE;
+        private int minBitrate = 0;
+        private int minHeight = 0;
+        private int pinnedTrackIndex = C.INDEX_UNSET;
+        private boolean playlistItemInfoPending;
+        private final AnalyticsListener analyticsListener = new AnalyticsListener() {
+            @Override
+            public void onDownstreamFormatChanged(@NotNull EventTime eventTime, @NotNull MediaLoadData mediaLoadData) {
+                Format format = mediaLoadData.trackFormat;
+                // HLS variants muxing audio and video are loaded as the default track type.
+                boolean isVideo = mediaLoadData.trackType == C.TRACK_TYPE_VIDEO
+                        || (mediaLoadData.trackType == C.TRACK_TYPE_DEFAULT && format != null && format.height != Format.NO_VALUE);
+                if (format == null || !isVideo) {
+                    return;
+                }
+                sendResolutionChange(indexOfVideoFormat(format), format.bitrate, mediaLoadData.trackSelectionReason);
+            }
+        };
 
+        /**
+         * Resolves the media and builds everything but the player, which reads the download index and
+         * may take a while. Runs on the setup thread, {@link #start(int)} finishes on the main thread.
+         */
         VideoPlayer(
                 Context context,
                 EventChannel eventChannel,
+                BatchingEventSink eventSink,
                 TextureRegistry.SurfaceTextureEntry textureEntry,
                 String dataSource,
-                Result result, VideoDownloadManager videoDownloadManager) {
+                VideoDownloadManager videoDownloadManager,
+                PositionUpdateScheduler positionUpdateScheduler,
+                VideoPlayerPool playerPool,
+                VideoPlayerPool.BufferDurations bufferDurations,
+                MediaItem.LiveConfiguration liveConfiguration,
+                String contentId,
+                VideoCacheManager videoCacheManager,
+                DecoderGovernor decoderGovernor) {
             this.eventChannel = eventChannel;
+            this.eventSink = eventSink;
             this.textureEntry = textureEntry;
             this.dataSourceUri = Uri.parse(dataSource);
+            this.contentId = contentId;
+            this.downloadIdentity = videoDownloadManager.getDownloadTracker().identityOf(dataSourceUri, contentId);
             this.context = context.getApplicationContext();
             this.videoDownloadManager = videoDownloadManager;
+            this.positionUpdateScheduler = positionUpdateScheduler;
+            this.playerPool = playerPool;
+            this.videoCacheManager = videoCacheManager;
+            this.liveConfiguration = liveConfiguration;
+            this.decoderGovernor = decoderGovernor;
+
+            components = playerPool.buildComponents(bufferDurations);
+            dataSourceFactory = buildDataSourceFactory(dataSourceUri);
+            mediaSource = buildMediaSource(dataSourceUri, dataSourceFactory, context);
+        }
 
-            renderersFactory = new DefaultRenderersFactory(context);
-            trackSelector = new DefaultTrackSelector(context);
-            exoPlayer = new SimpleExoPlayer.Builder(context, renderersFactory)
-                    .setTrackSelector(trackSelector)
-                    .build();
+        /** Takes or builds the player on the main thread and prepares it. */
+        void start(int startupPolicy) {
+            pooledPlayer = playerPool.acquire(components);
+            pooledPlayer.trackSelectionFactory.setPolicy(startupPolicy);
+            renderersFactory = pooledPlayer.renderersFactory;
+            trackSelector = pooledPlayer.trackSelector;
+            exoPlayer = pooledPlayer.exoPlayer;
+            exoPlayer.addAnalyticsListener(metricsCollector);
+            exoPlayer.prepare(mediaSource);
 
-            if (isFileOrAsset(dataSourceUri)) {
-                dataSourceFactory = new DefaultDataSourceFactory(context, "ExoPlayer");
-            } else {
-                dataSourceFactory =
-                        new DefaultHttpDataSource.Factory()
-                                .setUserAgent("ExoPlayer")
-                                .setAllowCrossProtocolRedirects(true);
-            }
+            setupVideoPlayer(textureEntry);
+            decoderGovernor.activate(this);
+        }
 
-            MediaSource mediaSource = buildMediaSource(dataSourceUri, dataSourceFactory, context);
-            exoPlayer.prepare(mediaSource);
+        private DataSource.Factory buildDataSourceFactory(Uri uri) {
+            DataSource.Factory upstreamFactory = buildUpstreamDataSourceFactory(uri);
+            // Reads through the playback cache when it is enabled or this uri was preloaded. Streams
+            // played with live options are not cached, their media is never played again.
+            return !isFileOrAsset(uri) && liveConfiguration == null && videoCacheManager.shouldCache(uri)
+                    ? videoCacheManager.buildPlaybackDataSourceFactory(upstreamFactory)
+                    : upstreamFactory;
+        }
 
-            setupVideoPlayer(eventChannel, textureEntry, result);
+        /** Reads without the playback cache, as manifests are, since live ones change under one url. */
+        private DataSource.Factory buildUpstreamDataSourceFactory(Uri uri) {
+            if (isFileOrAsset(uri)) {
+                return new DefaultDataSourceFactory(context, "ExoPlayer");
+            }
+            return VideoHttpStack.Companion.getInstance().getDataSourceFactory();
         }
 
         private static boolean isFileOrAsset(Uri uri) {
@@ -281,60 +814,76 @@ public class VideoPlayerPlugin implements MethodCallHandler {
         private MediaSource buildMediaSource(
                 Uri uri, DataSource.Factory mediaDataSourceFactory, Context context) {
 
-            Download download = videoDownloadManager.getDownloadTracker().getDownload(uri);
+            VideoDownloadTracker downloadTracker = videoDownloadManager.getDownloadTracker();
+            Download download = downloadTracker.getDownload(
+                    uri.equals(dataSourceUri) ? downloadIdentity : downloadTracker.identityOf(uri, null));
             if (download != null && download.state == Download.STATE_COMPLETED) {
                 DownloadRequest downloadRequest = download.request;
+                // This may run on the setup thread, the quota manager lives on the main thread.
+                mainHandler.post(() -> videoDownloadManager.getDownloadQuotaManager().onPlayed(downloadRequest.id));
                 return DownloadHelper.createMediaSource(downloadRequest, videoDownloadManager.getLocalDataSourceFactory());
             }
 
+            DataSource.Factory manifestDataSourceFactory = buildUpstreamDataSourceFactory(uri);
             @C.ContentType int type = Util.inferContentType(uri);
             switch (type) {
                 case C.TYPE_SS:
                     return new SsMediaSource.Factory(
                             new DefaultSsChunkSource.Factory(mediaDataSourceFactory),
-                            new DefaultDataSourceFactory(context, null, mediaDataSourceFactory))
-                            .createMediaSource(MediaItem.fromUri(uri));
+                            manifestCache.buildDataSourceFactory(
+                                    new DefaultDataSourceFactory(context, null, manifestDataSourceFactory)))
+                            .createMediaSource(buildMediaItem(uri));
                 case C.TYPE_DASH:
                     return new DashMediaSource.Factory(
                             new DefaultDashChunkSource.Factory(mediaDataSourceFactory),
-                            new DefaultDataSourceFactory(context, null, mediaDataSourceFactory))
-                            .createMediaSource(MediaItem.fromUri(uri));
+                            manifestCache.buildDataSourceFactory(
+                                    new DefaultDataSourceFactory(context, null, manifestDataSourceFactory)))
+                            .createMediaSource(buildMediaItem(uri));
                 case C.TYPE_HLS:
-                    return new HlsMediaSource.Factory(mediaDataSourceFactory).createMediaSource(MediaItem.fromUri(uri));
+                    return new HlsMediaSource.Factory(
+                            manifestCache.buildHlsDataSourceFactory(manifestDataSourceFactory, mediaDataSourceFactory))
+                            .setPlaylistParserFactory(manifestCache.getHlsPlaylistParserFactory())
+                            .createMediaSource(buildMediaItem(uri));
                 case C.TYPE_OTHER:
                     return new ProgressiveMediaSource.Factory(mediaDataSourceFactory)
-                            .createMediaSource(MediaItem.fromUri(uri));
+                            .createMediaSource(buildMediaItem(uri));
                 default: {
                     throw new IllegalStateException("Unsupported type: " + type);
                 }
             }
         }
 
-        private void setupVideoPlayer(
-                EventChannel eventChannel,
-                TextureRegistry.SurfaceTextureEntry textureEntry,
-                Result result) {
-
-            eventChannel.setStreamHandler(
-                    new EventChannel.StreamHandler() {
-                        @Override
-                        public void onListen(Object o, EventChannel.EventSink sink) {
-                            eventSink.setDelegate(sink);
-                        }
+        /**
+         * Live streams play at the offset from the live edge given on {@code create}, adjusting the
+         * playback speed within its range to stay there. Unset values come from the manifest.
+         */
+        private MediaItem buildMediaItem(Uri uri) {
+            MediaItem.Builder builder = new MediaItem.Builder().setUri(uri).setCustomCacheKey(customCacheKeyOf(uri));
+            if (liveConfiguration != null) {
+                builder.setLiveTargetOffsetMs(liveConfiguration.targetOffsetMs)
+                        .setLiveMinOffsetMs(liveConfiguration.minOffsetMs)
+                        .setLiveMaxOffsetMs(liveConfiguration.maxOffsetMs)
+                        .setLiveMinPlaybackSpeed(liveConfiguration.minPlaybackSpeed)
+                        .setLiveMaxPlaybackSpeed(liveConfiguration.maxPlaybackSpeed);
+            }
+            return builder.build();
+        }
 
-                        @Override
-                        public void onCancel(Object o) {
-                            eventSink.setDelegate(null);
-                        }
-                    });
+        /**
+         * The content id is the cache key of progressive media only. Adaptive media is cached per
+         * segment url, and its content id only identifies its download.
+         */
+        private String customCacheKeyOf(Uri uri) {
+            return uri.equals(dataSourceUri) && Util.inferContentType(uri) == C.TYPE_OTHER ? contentId : null;
+        }
 
+        private void setupVideoPlayer(TextureRegistry.SurfaceTextureEntry textureEntry) {
             surface = new Surface(textureEntry.surfaceTexture());
             exoPlayer.setVideoSurface(surface);
             setAudioAttributes(exoPlayer);
 
-            exoPlayer.addListener(
+            playerListener =
                     new Player.Listener() {
-
                         @Override
                         public void onPlaybackStateChanged(int playbackState) {
                             if (playbackState == Player.STATE_BUFFERING) {
@@ -345,53 +894,70 @@ public class VideoPlayerPlugin implements MethodCallHandler {
                                 if (!isInitialized) {
                                     isInitialized = true;
                                     sendInitialized();
+                                } else if (playlistItemInfoPending) {
+                                    sendPlaylistItemChanged();
                                 }
                             } else if (playbackState == Player.STATE_ENDED) {
-                                Map<String, Object> event = new HashMap<>();
-                                event.put("event", "completed");
-                                eventSink.success(event);
+                                sendCompleted();
                             }
                         }
 
                         @Override
                         public void onPlayWhenReadyChanged(boolean playWhenReady, int reason) {
+                            // The playing player gets the larger share of the buffer budget.
+                            pooledPlayer.loadControl.setPlaying(playWhenReady);
                             sendPlayStateChange(playWhenReady);
                         }
 
                         @Override
                         public void onPlayerError(@NotNull PlaybackException error) {
-                            eventSink.error("VideoError", "Video player had error " + error, null);
+                            sendError("Video player had error " + error);
+                        }
+
+                        @Override
+                        public void onMediaItemTransition(MediaItem mediaItem, int reason) {
+                            if (isInitialized) {
+                                sendPlaylistItemChanged();
+                            }
                         }
 
                         @Override
                         public void onTimelineChanged(@NotNull Timeline timeline, int reason) {
                             parseManifest(exoPlayer.getCurrentManifest());
+                            updateLiveOffsetSubscription();
                         }
 
                         @Override
-                        public void onTracksChanged(@NotNull TrackGroupArray trackGroups, @NotNull TrackSelectionArray trackSelections) {
-                            if (trackSelections != null && trackSelections.length > 0 && trackSelections.get(0) != null) {
-                                sendResolutionChange(trackSelections.get(0).getIndexInTrackGroup(0));   //todo 还不知道怎么改
+                        public void onTracksChanged(
+                                @NotNull TrackGroupArray trackGroups, @NotNull TrackSelectionArray trackSelections) {
+                            // A pinned index refers to the video tracks of the current item, which were
+                            // unknown or different when it was pinned.
+                            if (pinnedTrackIndex != C.INDEX_UNSET) {
+                                applyTrackConstraints();
                             }
                         }
-                    });
-
-            Map<String, Object> reply = new HashMap<>();
-            reply.put("textureId", textureEntry.id());
-            result.success(reply);
+                    };
+            exoPlayer.addListener(playerListener);
+            exoPlayer.addAnalyticsListener(analyticsListener);
         }
 
-
+        /**
+         * Sends the resolutions of the HLS variants when they changed. Live playlist refreshes keep the
+         * master playlist, so they are skipped without looking at the variants again.
+         */
         private void parseManifest(Object manifest) {
-            if (manifest instanceof HlsManifest) {
-                HlsManifest hlsManifest = (HlsManifest) manifest;
-                Map<Integer, String> map = new HashMap<>();
-                for (int i = 0; i < hlsManifest.masterPlaylist.variants.size(); i++) {
-                    HlsMasterPlaylist.Variant variant = hlsManifest.masterPlaylist.variants.get(i);
-                    String resolution = variant.format.width + "x" + variant.format.height;
-                    map.put(i, resolution);
-                }
-                sendResolutions(map);
+            if (!(manifest instanceof HlsManifest)) {
+                return;
+            }
+            HlsMasterPlaylist masterPlaylist = ((HlsManifest) manifest).masterPlaylist;
+            if (masterPlaylist == lastMasterPlaylist) {
+                return;
+            }
+            lastMasterPlaylist = masterPlaylist;
+            Map<Integer, String> resolutions = manifestCache.getVariantTable(masterPlaylist);
+            if (!resolutions.equals(lastResolutions)) {
+                lastResolutions = resolutions;
+                sendResolutions(resolutions);
             }
         }
 
@@ -402,26 +968,48 @@ public class VideoPlayerPlugin implements MethodCallHandler {
             eventSink.success(event);
         }
 
-        private void sendResolutionChange(int trackIndex) {
+        /**
+         * Reports the variant that is now played, with the C.SELECTION_REASON_* the track selection gave
+         * for switching to it.
+         */
+        private void sendResolutionChange(int trackIndex, int bitrate, int reason) {
+            if (binaryEventChannel != null) {
+                binaryEventChannel.writeResolutionChange(textureEntry.id(), trackIndex, bitrate, reason);
+                return;
+            }
             Map<String, Object> event = new HashMap<>();
             event.put("event", "resolutionChange");
             event.put("index", trackIndex);
+            event.put("bitrate", bitrate);
+            event.put("reason", reason);
             eventSink.success(event);
         }
 
         private void sendBufferingStart() {
+            if (binaryEventChannel != null) {
+                binaryEventChannel.writeBufferingStart(textureEntry.id());
+                return;
+            }
             Map<String, Object> event = new HashMap<>();
             event.put("event", "bufferingStart");
             eventSink.success(event);
         }
 
         private void sendBufferingEnd() {
+            if (binaryEventChannel != null) {
+                binaryEventChannel.writeBufferingEnd(textureEntry.id());
+                return;
+            }
             Map<String, Object> event = new HashMap<>();
             event.put("event", "bufferingEnd");
             eventSink.success(event);
         }
 
         private void sendBufferingUpdate() {
+            if (binaryEventChannel != null) {
+                binaryEventChannel.writeBufferingUpdate(textureEntry.id(), exoPlayer.getBufferedPosition());
+                return;
+            }
             Map<String, Object> event = new HashMap<>();
             event.put("event", "bufferingUpdate");
             List<? extends Number> range = Arrays.asList(0, exoPlayer.getBufferedPosition());
@@ -430,7 +1018,102 @@ public class VideoPlayerPlugin implements MethodCallHandler {
             eventSink.success(event);
         }
 
+        /**
+         * Sends the frequent events and the initialized, completed and error events as binary records
+         * on {@code binaryEventChannel} instead of maps on the event channel, so that they keep their
+         * order. Events without a record type, such as metrics, stay on the event channel.
+         */
+        void setBinaryEventChannel(BinaryEventChannel binaryEventChannel) {
+            this.binaryEventChannel = binaryEventChannel;
+        }
+
+        /**
+         * Pushes position and buffered position to Dart every {@code intervalMs}, replacing the
+         * Dart side "position" polling. An interval of 0 stops the updates.
+         */
+        void setPositionUpdateInterval(long intervalMs) {
+            if (intervalMs > 0) {
+                positionUpdateScheduler.subscribe(positionUpdateListener, intervalMs);
+            } else {
+                positionUpdateScheduler.unsubscribe(positionUpdateListener);
+            }
+        }
+
+        Map<String, Object> getMetrics() {
+            return metricsCollector.getMetrics();
+        }
+
+        /** Sends the metrics every {@code intervalMs}, or stops sending them when it is 0. */
+        void setMetricsInterval(long intervalMs) {
+            if (intervalMs > 0) {
+                positionUpdateScheduler.subscribe(metricsListener, intervalMs);
+            } else {
+                positionUpdateScheduler.unsubscribe(metricsListener);
+            }
+        }
+
+        private void sendMetrics() {
+            Map<String, Object> event = new HashMap<>();
+            event.put("event", "metrics");
+            event.put("metrics", metricsCollector.getMetrics());
+            eventSink.success(event);
+        }
+
+        private void sendPositionUpdate() {
+            long position = exoPlayer.getCurrentPosition();
+            long bufferedPosition = exoPlayer.getBufferedPosition();
+            if (position == lastSentPosition && bufferedPosition == lastSentBufferedPosition) {
+                return;
+            }
+            lastSentPosition = position;
+            lastSentBufferedPosition = bufferedPosition;
+
+            if (binaryEventChannel != null) {
+                binaryEventChannel.writePositionUpdate(textureEntry.id(), position, bufferedPosition);
+                return;
+            }
+            Map<String, Object> event = new HashMap<>();
+            event.put("event", "positionUpdate");
+            event.put("position", position);
+            List<? extends Number> range = Arrays.asList(0, bufferedPosition);
+            event.put("values", Collections.singletonList(range));
+            eventSink.success(event);
+        }
+
+        /**
+         * Reports the live offset on its own ticks, since it grows while the position stands still,
+         * such as when paused.
+         */
+        private void updateLiveOffsetSubscription() {
+            boolean live = exoPlayer.isCurrentWindowLive();
+            if (live == liveOffsetSubscribed) {
+                return;
+            }
+            liveOffsetSubscribed = live;
+            if (live) {
+                positionUpdateScheduler.subscribe(liveOffsetListener, LIVE_OFFSET_INTERVAL_MS);
+            } else {
+                positionUpdateScheduler.unsubscribe(liveOffsetListener);
+            }
+        }
+
+        /** Reports how far playback is behind the live edge, once the stream's clock is known. */
+        private void sendLiveOffset() {
+            long liveOffset = exoPlayer.getCurrentLiveOffset();
+            if (liveOffset == C.TIME_UNSET) {
+                return;
+            }
+            Map<String, Object> event = new HashMap<>();
+            event.put("event", "liveOffset");
+            event.put("offset", liveOffset);
+            eventSink.success(event);
+        }
+
         private void sendPlayStateChange(boolean playWhenReady) {
+            if (binaryEventChannel != null) {
+                binaryEventChannel.writePlayStateChanged(textureEntry.id(), playWhenReady);
+                return;
+            }
             Map<String, Object> event = new HashMap<>();
             event.put("event", "playStateChanged");
             event.put("isPlaying", playWhenReady);
@@ -443,10 +1126,11 @@ public class VideoPlayerPlugin implements MethodCallHandler {
         }
 
         void play() {
+            activate();
             if (exoPlayer.getPlaybackState() == Player.STATE_IDLE) {
                 exoPlayer.retry();
             } else if (exoPlayer.getPlaybackState() == Player.STATE_ENDED) {
-                seekTo(0);
+                exoPlayer.seekTo(0);
             }
             exoPlayer.setPlayWhenReady(true);
         }
@@ -464,10 +1148,119 @@ public class VideoPlayerPlugin implements MethodCallHandler {
             exoPlayer.setVolume(bracketedValue);
         }
 
-        void seekTo(int location) {
+        /**
+         * Seeks to {@code location}. While scrubbing, bursts of seeks are collapsed to the most recent
+         * location, which is sought with {@link SeekParameters#CLOSEST_SYNC} regardless of
+         * {@code seekParameters}.
+         */
+        void seekTo(int location, SeekParameters seekParameters) {
+            activate();
+            if (scrubbing) {
+                scrubTargetMs = location;
+                scheduleScrubSeek();
+                return;
+            }
+            exoPlayer.setSeekParameters(seekParameters);
             exoPlayer.seekTo(location);
         }
 
+        /** Marks the player as used, resuming it when it was suspended. */
+        private void activate() {
+            decoderGovernor.activate(this);
+            if (suspended) {
+                suspended = false;
+                exoPlayer.prepare();
+            }
+        }
+
+        @Override
+        public void suspend() {
+            if (suspended) {
+                return;
+            }
+            decoderGovernor.remove(this);
+            suspended = true;
+            exoPlayer.setPlayWhenReady(false);
+            // Stopping keeps the media items, position and track selection, and the last frame on the
+            // surface, but releases the renderers' codecs and the loaded media.
+            exoPlayer.stop();
+        }
+
+        @Override
+        public boolean isPlaying() {
+            return exoPlayer.getPlayWhenReady();
+        }
+
+        @Override
+        public boolean isVisible() {
+            return visible;
+        }
+
+        /**
+         * Trims a paused player: it stops loading ahead, and is suspended when off-screen or when
+         * {@code releaseCodecs} is set. Returns whether the player was suspended.
+         */
+        boolean trimMemory(boolean releaseCodecs) {
+            if (suspended || isPlaying()) {
+                return false;
+            }
+            pooledPlayer.loadControl.setTrimmed(true);
+            if (releaseCodecs || !visible) {
+                suspend();
+                return true;
+            }
+            return false;
+        }
+
+        /** Off-screen players are suspended first when too many players hold decoders. */
+        void setVisible(boolean visible) {
+            this.visible = visible;
+        }
+
+        /**
+         * Starts or ends scrubbing. When it ends, the last location scrubbed to is sought exactly.
+         */
+        void setScrubbing(boolean scrubbing) {
+            if (this.scrubbing == scrubbing) {
+                return;
+            }
+            this.scrubbing = scrubbing;
+            if (scrubbing) {
+                return;
+            }
+            scrubHandler.removeCallbacks(scrubSeek);
+            scrubSeekScheduled = false;
+            if (scrubTargetMs != C.TIME_UNSET) {
+                exoPlayer.setSeekParameters(SeekParameters.EXACT);
+                exoPlayer.seekTo(scrubTargetMs);
+                scrubTargetMs = C.TIME_UNSET;
+            }
+        }
+
+        private void scheduleScrubSeek() {
+            if (scrubSeekScheduled) {
+                return;
+            }
+            scrubSeekScheduled = true;
+            long delayMs = lastScrubSeekAtMs + SCRUB_SEEK_INTERVAL_MS - SystemClock.elapsedRealtime();
+            scrubHandler.postDelayed(scrubSeek, Math.max(0, delayMs));
+        }
+
+        private void seekToScrubTarget() {
+            scrubSeekScheduled = false;
+            long now = SystemClock.elapsedRealtime();
+            // Lets the previous seek load its keyframe, rather than cancelling it for the next one.
+            if (exoPlayer.getPlaybackState() == Player.STATE_BUFFERING
+                    && now - lastScrubSeekAtMs < SCRUB_SEEK_MAX_WAIT_MS) {
+                scrubSeekScheduled = true;
+                scrubHandler.postDelayed(scrubSeek, SCRUB_SEEK_INTERVAL_MS);
+                return;
+            }
+            lastScrubSeekAtMs = now;
+            exoPlayer.setSeekParameters(SeekParameters.CLOSEST_SYNC);
+            exoPlayer.seekTo(scrubTargetMs);
+        }
+
         long getPosition() {
             return exoPlayer.getCurrentPosition();
         }
@@ -478,144 +1271,308 @@ public class VideoPlayerPlugin implements MethodCallHandler {
                 Map<String, Object> event = new HashMap<>();
                 event.put("event", "initialized");
                 event.put("duration", exoPlayer.getDuration());
-
-                if (exoPlayer.getVideoFormat() != null) {
-                    Format videoFormat = exoPlayer.getVideoFormat();
-                    int width = videoFormat.width;
-                    int height = videoFormat.height;
-                    int rotationDegrees = videoFormat.rotationDegrees;
-                    // Switch the width/height if video was taken in portrait mode
-                    if (rotationDegrees == 90 || rotationDegrees == 270) {
-                        width = exoPlayer.getVideoFormat().height;
-                        height = exoPlayer.getVideoFormat().width;
-                    }
-                    event.put("width", width);
-                    event.put("height", height);
+                putVideoSize(event);
+                if (binaryEventChannel != null) {
+                    binaryEventChannel.writeInitialized(textureEntry.id(), exoPlayer.getDuration(),
+                            event.containsKey("width") ? (int) event.get("width") : 0,
+                            event.containsKey("height") ? (int) event.get("height") : 0);
+                    return;
                 }
                 eventSink.success(event);
             }
         }
 
-        void dispose() {
-            if (isInitialized) {
-                exoPlayer.stop();
+        private void sendCompleted() {
+            if (binaryEventChannel != null) {
+                binaryEventChannel.writeCompleted(textureEntry.id());
+                return;
+            }
+            Map<String, Object> event = new HashMap<>();
+            event.put("event", "completed");
+            eventSink.success(event);
+        }
+
+        private void sendError(String message) {
+            if (binaryEventChannel != null) {
+                binaryEventChannel.writeError(textureEntry.id(), message);
+                return;
+            }
+            eventSink.error("VideoError", message, null);
+        }
+
+        /**
+         * Reports the index of the playlist item now played. Duration and size follow in a second event
+         * once the item is ready, unless it was already prepared in the background.
+         */
+        private void sendPlaylistItemChanged() {
+            Map<String, Object> event = new HashMap<>();
+            event.put("event", "playlistItemChanged");
+            event.put("index", exoPlayer.getCurrentWindowIndex());
+            playlistItemInfoPending = exoPlayer.getPlaybackState() != Player.STATE_READY;
+            if (!playlistItemInfoPending) {
+                event.put("duration", exoPlayer.getDuration());
+                putVideoSize(event);
             }
+            eventSink.success(event);
+        }
+
+        private void putVideoSize(Map<String, Object> event) {
+            if (exoPlayer.getVideoFormat() != null) {
+                Format videoFormat = exoPlayer.getVideoFormat();
+                int width = videoFormat.width;
+                int height = videoFormat.height;
+                int rotationDegrees = videoFormat.rotationDegrees;
+                // Switch the width/height if video was taken in portrait mode
+                if (rotationDegrees == 90 || rotationDegrees == 270) {
+                    width = exoPlayer.getVideoFormat().height;
+                    height = exoPlayer.getVideoFormat().width;
+                }
+                event.put("width", width);
+                event.put("height", height);
+            }
+        }
+
+        /**
+         * Replaces what the player plays with {@code uris}, played back to back by this one player so
+         * the next item is prepared while the current one plays.
+         */
+        void setPlaylist(List<String> uris, int startIndex) {
+            activate();
+            List<MediaSource> mediaSources = new ArrayList<>();
+            for (String uri : uris) {
+                mediaSources.add(buildPlaylistItem(uri));
+            }
+            exoPlayer.setMediaSources(mediaSources, startIndex, C.TIME_UNSET);
+        }
+
+        /**
+         * Inserts {@code uri} at {@code index}, or appends it when the index is negative.
+         */
+        void addToPlaylist(String uri, int index) {
+            activate();
+            if (index < 0) {
+                exoPlayer.addMediaSource(buildPlaylistItem(uri));
+            } else {
+                exoPlayer.addMediaSource(index, buildPlaylistItem(uri));
+            }
+        }
+
+        void removeFromPlaylist(int index) {
+            exoPlayer.removeMediaItem(index);
+        }
+
+        void skipTo(int index) {
+            activate();
+            exoPlayer.seekTo(index, C.TIME_UNSET);
+        }
+
+        private MediaSource buildPlaylistItem(String uri) {
+            Uri itemUri = Uri.parse(uri);
+            return buildMediaSource(itemUri, buildDataSourceFactory(itemUri), context);
+        }
+
+        void dispose() {
+            scrubHandler.removeCallbacks(scrubSeek);
+            decoderGovernor.remove(this);
+            positionUpdateScheduler.unsubscribe(positionUpdateListener);
+            positionUpdateScheduler.unsubscribe(metricsListener);
+            positionUpdateScheduler.unsubscribe(liveOffsetListener);
             textureEntry.release();
             eventChannel.setStreamHandler(null);
+            // The player is missing when starting failed.
+            if (pooledPlayer != null) {
+                if (isInitialized) {
+                    exoPlayer.stop();
+                }
+                if (playerListener != null) {
+                    exoPlayer.removeListener(playerListener);
+                }
+                exoPlayer.removeAnalyticsListener(analyticsListener);
+                exoPlayer.removeAnalyticsListener(metricsCollector);
+                // Hands the player back to the pool, which also detaches it from the surface.
+                playerPool.release(pooledPlayer);
+            }
             if (surface != null) {
                 surface.release();
             }
-            if (exoPlayer != null) {
-                exoPlayer.release();
-            }
             if (downloadHelper != null) {
                 downloadHelper.release();
             }
-            cancelRefreshProgressTimer();
+            videoDownloadManager.getDownloadTracker().removeDownloadListener(downloadIdentity, downloadListener);
         }
 
+        /**
+         * Limits adaptive selection to the smallest variant covering the rendered size, in physical
+         * pixels, and those below it. A pinned resolution still takes precedence.
+         */
+        void setViewportSize(int width, int height) {
+            viewportWidth = width;
+            viewportHeight = height;
+            applyTrackConstraints();
+        }
+
+        /**
+         * Sets the playback speed, which may be done before the player is initialized. A live stream
+         * played at a speed other than 1 no longer catches up with its target offset.
+         */
         void setSpeed(double speed) {
-            if (!isInitialized) {
-                return;
-            }
             PlaybackParameters playbackParameters = new PlaybackParameters((float) speed);
             exoPlayer.setPlaybackParameters(playbackParameters);
         }
 
         /**
          * 切换清晰度
-         * https://exoplayer.dev/doc/reference/com/google/android/exoplayer2/trackselection/DefaultTrackSelector.html
+         * <p>
+         * Pins the variant {@code trackIndex} of the first video group.
          */
         void switchResolution(int trackIndex) {
-            if (!isInitialized) {
-                return;
+            setResolutionPolicy(Integer.MAX_VALUE, Integer.MAX_VALUE, 0, 0, trackIndex);
+        }
+
+        /**
+         * Constrains adaptive selection to variants within the given bitrate and height bounds, or to the
+         * pinned variant when {@code pinnedTrackIndex} is set.
+         * <p>
+         * Everything is expressed as track selection constraints rather than a selection override, so the
+         * video track keeps its adaptive selection and DASH and SmoothStreaming switch at the next
+         * segment boundary. HLS may still discard buffered segments of the old variant.
+         */
+        void setResolutionPolicy(int maxBitrate, int maxHeight, int minBitrate, int minHeight, int pinnedTrackIndex) {
+            this.maxBitrate = maxBitrate;
+            this.maxHeight = maxHeight;
+            this.minBitrate = minBitrate;
+            this.minHeight = minHeight;
+            this.pinnedTrackIndex = pinnedTrackIndex;
+            applyTrackConstraints();
+        }
+
+        private void applyTrackConstraints() {
+            DefaultTrackSelector.ParametersBuilder builder = trackSelector.buildUponParameters()
+                    .clearSelectionOverrides();
+            TrackGroup videoGroup = getVideoTrackGroup();
+            if (pinnedTrackIndex != C.INDEX_UNSET && videoGroup != null && pinnedTrackIndex < videoGroup.length) {
+                Format pinned = videoGroup.getFormat(pinnedTrackIndex);
+                builder.setMinVideoBitrate(pinned.bitrate != Format.NO_VALUE ? pinned.bitrate : 0)
+                        .setMaxVideoBitrate(pinned.bitrate != Format.NO_VALUE ? pinned.bitrate : Integer.MAX_VALUE)
+                        .setMinVideoSize(0, pinned.height != Format.NO_VALUE ? pinned.height : 0)
+                        .setMaxVideoSize(Integer.MAX_VALUE, pinned.height != Format.NO_VALUE ? pinned.height : Integer.MAX_VALUE)
+                        .clearViewportSizeConstraints();
+            } else {
+                builder.setMinVideoBitrate(minBitrate)
+                        .setMaxVideoBitrate(maxBitrate)
+                        .setMinVideoSize(0, minHeight)
+                        .setMaxVideoSize(Integer.MAX_VALUE, maxHeight);
+                // Keeps the smallest variant that covers the viewport, not only the smaller ones.
+                if (viewportWidth != Integer.MAX_VALUE) {
+                    builder.setViewportSize(viewportWidth, viewportHeight, true);
+                } else {
+                    builder.clearViewportSizeConstraints();
+                }
             }
-            DefaultTrackSelector.Parameters parameters = trackSelector.getParameters();
-            MappingTrackSelector.MappedTrackInfo currentMappedTrackInfo = trackSelector.getCurrentMappedTrackInfo();
-            if (currentMappedTrackInfo == null || parameters == null) {
-                return;
+            trackSelector.setParameters(builder);
+        }
+
+        /**
+         * The first track group of the video renderer, whose track indices the resolutions event
+         * reports.
+         */
+        private TrackGroup getVideoTrackGroup() {
+            MappingTrackSelector.MappedTrackInfo mappedTrackInfo = trackSelector.getCurrentMappedTrackInfo();
+            if (mappedTrackInfo == null) {
+                return null;
             }
-            int videoRendererIndex = 0;
-            TrackGroupArray trackGroups = currentMappedTrackInfo.getTrackGroups(videoRendererIndex);
-            DefaultTrackSelector.ParametersBuilder parametersBuilder = parameters.buildUpon();
-            parametersBuilder.clearSelectionOverrides();
-            DefaultTrackSelector.SelectionOverride selectionOverride = new DefaultTrackSelector.SelectionOverride(0, trackIndex);
-            parametersBuilder.setSelectionOverride(videoRendererIndex, trackGroups, selectionOverride);
-            trackSelector.setParameters(parametersBuilder);
+            for (int rendererIndex = 0; rendererIndex < mappedTrackInfo.getRendererCount(); rendererIndex++) {
+                TrackGroupArray trackGroups = mappedTrackInfo.getTrackGroups(rendererIndex);
+                if (mappedTrackInfo.getRendererType(rendererIndex) == C.TRACK_TYPE_VIDEO && trackGroups.length > 0) {
+                    return trackGroups.get(0);
+                }
+            }
+            return null;
         }
 
-        void initDownloadState(VideoDownloadManager videoDownloadManager) {
-            Download download = sendDownloadState(videoDownloadManager);
-            if (download != null) {
-                //如果在STATE_DOWNLOADING状态，直到下载完成onDownloadsChanged才会回调，所以不能用startRefreshProgressTask()方法
-                startRefreshProgressTimer(null);
+        private int indexOfVideoFormat(Format format) {
+            TrackGroup videoGroup = getVideoTrackGroup();
+            if (videoGroup == null) {
+                return C.INDEX_UNSET;
+            }
+            for (int i = 0; i < videoGroup.length; i++) {
+                Format candidate = videoGroup.getFormat(i);
+                // Loaded formats may carry more detail than the track group's, such as HLS variants.
+                if (candidate.equals(format) || (candidate.id != null && candidate.id.equals(format.id))) {
+                    return i;
+                }
             }
+            return C.INDEX_UNSET;
+        }
+
+        /**
+         * Sends the current download state, then every change of it, including the progress of a
+         * running download, until the player is disposed.
+         */
+        void initDownloadState(VideoDownloadManager videoDownloadManager) {
+            sendDownloadState(videoDownloadManager);
+            videoDownloadManager.getDownloadTracker().addDownloadListener(downloadIdentity, downloadListener);
+        }
+
+        private void onDownloadChanged(Download download) {
+            sendDownloadState(videoDownloadManager);
         }
 
         private Download sendDownloadState(VideoDownloadManager videoDownloadManager) {
-            Download download = videoDownloadManager.getDownloadTracker().getDownload(dataSourceUri);
+            Download download = videoDownloadManager.getDownloadTracker().getDownload(downloadIdentity);
 
+            int downloadState = GpDownloadState.of(download);
+
+            if (binaryEventChannel != null) {
+                binaryEventChannel.writeDownloadState(
+                        textureEntry.id(), downloadState, GpDownloadState.progressOf(download));
+                return download;
+            }
             Map<String, Object> event = new HashMap<>();
             event.put("event", "downloadState");
-
-            @Download.State int state = download != null ? download.state : Download.STATE_QUEUED;
-            if (state == Download.STATE_COMPLETED) {
-                event.put("state", GpDownloadState.COMPLETED);
-            } else if (state == Download.STATE_DOWNLOADING) {
-                event.put("state", GpDownloadState.DOWNLOADING);
-                event.put("progress", download.getPercentDownloaded());
-            } else if (state == Download.STATE_FAILED) {
-                event.put("state", GpDownloadState.ERROR);
-            } else {
-                event.put("state", GpDownloadState.UNDOWNLOAD);
+            event.put("state", downloadState);
+            if (downloadState == GpDownloadState.DOWNLOADING) {
+                event.put("progress", GpDownloadState.progressOf(download));
             }
-
             eventSink.success(event);
 
             return download;
         }
 
         /**
-         * 下载指定分辨率视频，暂时只支持hls
+         * 下载指定分辨率视频
          */
-        void download(int trackIndex, String downloadNotificationName) {
+        void download(int trackIndex, String downloadNotificationName, int priority) {
             if (isFileOrAsset(dataSourceUri)) {
                 return;
             }
-            int type = Util.inferContentType(dataSourceUri);
-            switch (type) {
-                case C.TYPE_HLS:
-                    downloadHls(trackIndex, downloadNotificationName);
-                    break;
-                case C.TYPE_DASH:
-                case C.TYPE_OTHER:
-                case C.TYPE_SS:
-                    break;
-                default: {
-                }
-            }
-        }
-
-        private void downloadHls(int trackIndex, String downloadNotificationName) {
             if (downloadHelper != null) {
                 downloadHelper.release();
             }
-            downloadHelper = DownloadHelper.forHls(context, dataSourceUri, dataSourceFactory, renderersFactory);
+            MediaItem mediaItem = new MediaItem.Builder()
+                    .setUri(dataSourceUri)
+                    .setMimeType(VideoCacheManager.inferMimeType(dataSourceUri))
+                    .setCustomCacheKey(customCacheKeyOf(dataSourceUri))
+                    .build();
+            // Progressive media has no tracks to choose from and is downloaded as a whole.
+            downloadHelper = DownloadHelper.forMediaItem(context, mediaItem, renderersFactory, dataSourceFactory);
             downloadHelper.prepare(new DownloadHelper.Callback() {
                 @Override
                 public void onPrepared(DownloadHelper helper) {
-                    MappingTrackSelector.MappedTrackInfo mappedTrackInfo = helper.getMappedTrackInfo(0);
                     for (int periodIndex = 0; periodIndex < helper.getPeriodCount(); periodIndex++) {
-                        helper.clearTrackSelections(periodIndex);
-                        if (mappedTrackInfo != null) {
-                            DefaultTrackSelector.SelectionOverride selectionOverride = new DefaultTrackSelector.SelectionOverride(0, trackIndex);
-                            List<DefaultTrackSelector.SelectionOverride> list = new ArrayList<>();
-                            list.add(selectionOverride);
-                            helper.addTrackSelectionForSingleRenderer(periodIndex, 0, DownloadHelper.getDefaultTrackSelectorParameters(context), list);
-                        }
+                        selectDownloadTracks(helper, periodIndex, trackIndex);
+                    }
+                    DownloadRequest downloadRequest = helper.getDownloadRequest(
+                            downloadIdentity, Util.getUtf8Bytes(downloadNotificationName));
+                    videoDownloadManager.getDownloadScheduler().setPriority(downloadRequest.id, priority);
+                    // Added held back, the scheduler starts it once it is among the highest priorities.
+                    DownloadService.sendAddDownload(context, VideoDownloadService.class, downloadRequest,
+                            VideoDownloadScheduler.STOP_REASON_PREEMPTED, false);
+                    // The prepared media is no longer needed once the request is built.
+                    helper.release();
+                    if (downloadHelper == helper) {
+                        downloadHelper = null;
                     }
-                    DownloadRequest downloadRequest = helper.getDownloadRequest(Util.getUtf8Bytes(downloadNotificationName));
-                    DownloadService.sendAddDownload(context, VideoDownloadService.class, downloadRequest, 0, false);
                 }
 
                 @Override
@@ -623,66 +1580,34 @@ public class VideoPlayerPlugin implements MethodCallHandler {
                     e.printStackTrace();
                 }
             });
-
-            startRefreshProgressTask();
-        }
-
-        private void startRefreshProgressTask() {
-            final boolean[] isRunTask = {false};
-            videoDownloadManager.getDownloadTracker().addListener(new VideoDownloadTracker.Listener() {
-                @Override
-                public void onDownloadsChanged() {
-                    if (!isRunTask[0]) {
-                        startRefreshProgressTimer(this);
-                        isRunTask[0] = true;
-                    }
-                }
-            });
         }
 
-        private void startRefreshProgressTimer(VideoDownloadTracker.Listener listener) {
-            if (refreshProgressTimer != null) {
-                refreshProgressTimer.cancel();
-            }
-            refreshProgressTimer = new Timer();
-            TimerTask timerTask = new TimerTask() {
-                @Override
-                public void run() {
-                    Download download = videoDownloadManager.getDownloadTracker().getDownload(dataSourceUri);
-                    sendDownloadState(videoDownloadManager);
-
-                    if (download != null && download.isTerminalState()) {
-                        cancelRefreshProgressTimer();
-                        if (listener != null) {
-                            videoDownloadManager.getDownloadTracker().removeListener(listener);
-                        }
-                    }
+        /**
+         * Selects the video track {@code trackIndex} of the first video group, and the default tracks of
+         * the other renderers so separately delivered audio (DASH, SmoothStreaming, HLS renditions) is
+         * downloaded as well.
+         */
+        private void selectDownloadTracks(DownloadHelper helper, int periodIndex, int trackIndex) {
+            MappingTrackSelector.MappedTrackInfo mappedTrackInfo = helper.getMappedTrackInfo(periodIndex);
+            DefaultTrackSelector.Parameters parameters = DownloadHelper.getDefaultTrackSelectorParameters(context);
+            helper.clearTrackSelections(periodIndex);
+            for (int rendererIndex = 0; rendererIndex < mappedTrackInfo.getRendererCount(); rendererIndex++) {
+                List<DefaultTrackSelector.SelectionOverride> overrides = new ArrayList<>();
+                TrackGroupArray trackGroups = mappedTrackInfo.getTrackGroups(rendererIndex);
+                if (mappedTrackInfo.getRendererType(rendererIndex) == C.TRACK_TYPE_VIDEO
+                        && trackGroups.length > 0
+                        && trackIndex < trackGroups.get(0).length) {
+                    overrides.add(new DefaultTrackSelector.SelectionOverride(0, trackIndex));
                 }
-            };
-            refreshProgressTimer.schedule(timerTask, 1000, 1000);
-        }
-
-        private void cancelRefreshProgressTimer() {
-            if (refreshProgressTimer != null) {
-                refreshProgressTimer.cancel();
-                refreshProgressTimer = null;
+                helper.addTrackSelectionForSingleRenderer(periodIndex, rendererIndex, parameters, overrides);
             }
         }
 
         void removeDownload() {
-            Download download = videoDownloadManager.getDownloadTracker().getDownload(dataSourceUri);
+            Download download = videoDownloadManager.getDownloadTracker().getDownload(downloadIdentity);
             if (download != null) {
+                // downloadListener reports the removal.
                 DownloadService.sendRemoveDownload(context, VideoDownloadService.class, download.request.id, false);
-                videoDownloadManager.getDownloadTracker().addListener(new VideoDownloadTracker.Listener() {
-                    @Override
-                    public void onDownloadsChanged() {
-                        if (videoDownloadManager.getDownloadTracker().getDownloadState(dataSourceUri) == Download.STATE_QUEUED) {
-                            sendDownloadState(videoDownloadManager);
-                            videoDownloadManager.getDownloadTracker().removeListener(this);
-                        }
-                    }
-                });
-//                startRefreshProgressTask();
             }
         }
     }
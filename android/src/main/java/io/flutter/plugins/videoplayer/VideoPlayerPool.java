@@ -0,0 +1,278 @@
+// Copyright 2017 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.videoplayer;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.google.android.exoplayer2.DefaultLoadControl;
+import com.google.android.exoplayer2.DefaultRenderersFactory;
+import com.google.android.exoplayer2.PlaybackParameters;
+import com.google.android.exoplayer2.SeekParameters;
+import com.google.android.exoplayer2.RenderersFactory;
+import com.google.android.exoplayer2.SimpleExoPlayer;
+import com.google.android.exoplayer2.trackselection.DefaultTrackSelector;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+import static com.google.android.exoplayer2.Player.REPEAT_MODE_OFF;
+
+/**
+ * A bounded pool of idle {@link SimpleExoPlayer}s, so that creating a video player doesn't have to
+ * build a renderers factory, a track selector and a player from scratch every time.
+ *
+ * <p>Pooling is off until {@link #configure(int, long)} is given a size. Released players are reset
+ * to their initial state and kept for at most {@code idleTimeoutMs}. Players with custom buffer
+ * durations are built on demand and never pooled.
+ *
+ * <p>This class is not thread-safe. All calls but {@link #buildComponents(BufferDurations)} must be done
+ * on the main thread.
+ */
+final class VideoPlayerPool {
+
+    static final int DEFAULT_MAX_SIZE = 0;
+    static final long DEFAULT_IDLE_TIMEOUT_MS = 30000;
+
+    /** What a player is built from, which can be built off the main thread. */
+    static final class PlayerComponents {
+        final DefaultTrackSelector trackSelector;
+        final RenderersFactory renderersFactory;
+        final BudgetedLoadControl loadControl;
+        final StartupTrackSelectionFactory trackSelectionFactory;
+        final boolean reusable;
+
+        PlayerComponents(DefaultTrackSelector trackSelector, RenderersFactory renderersFactory,
+                         BudgetedLoadControl loadControl, StartupTrackSelectionFactory trackSelectionFactory,
+                         boolean reusable) {
+            this.trackSelector = trackSelector;
+            this.renderersFactory = renderersFactory;
+            this.loadControl = loadControl;
+            this.trackSelectionFactory = trackSelectionFactory;
+            this.reusable = reusable;
+        }
+    }
+
+    /** A player together with the components it was built from. */
+    static final class PooledPlayer {
+        final SimpleExoPlayer exoPlayer;
+        final DefaultTrackSelector trackSelector;
+        final RenderersFactory renderersFactory;
+        final BudgetedLoadControl loadControl;
+        final StartupTrackSelectionFactory trackSelectionFactory;
+        final boolean reusable;
+        long releasedAtMs;
+
+        PooledPlayer(SimpleExoPlayer exoPlayer, PlayerComponents components) {
+            this.exoPlayer = exoPlayer;
+            this.trackSelector = components.trackSelector;
+            this.renderersFactory = components.renderersFactory;
+            this.loadControl = components.loadControl;
+            this.trackSelectionFactory = components.trackSelectionFactory;
+            this.reusable = components.reusable;
+        }
+
+        /** Puts back everything a video player may have changed, before the next one takes it. */
+        void reset(Context context) {
+            exoPlayer.stop();
+            exoPlayer.clearMediaItems();
+            exoPlayer.clearVideoSurface();
+            exoPlayer.setPlayWhenReady(false);
+            exoPlayer.setRepeatMode(REPEAT_MODE_OFF);
+            exoPlayer.setVolume(1f);
+            exoPlayer.setPlaybackParameters(PlaybackParameters.DEFAULT);
+            exoPlayer.setSeekParameters(SeekParameters.DEFAULT);
+            trackSelector.setParameters(DefaultTrackSelector.Parameters.getDefaults(context));
+            trackSelectionFactory.setPolicy(StartupTrackSelectionFactory.POLICY_BALANCED);
+            loadControl.setPlaying(false);
+            loadControl.setTrimmed(false);
+        }
+    }
+
+    /** Buffer durations for {@link #buildComponents(BufferDurations)}, in milliseconds. */
+    static final class BufferDurations {
+        final int minBufferMs;
+        final int maxBufferMs;
+        final int bufferForPlaybackMs;
+        final int bufferForPlaybackAfterRebufferMs;
+        final int backBufferMs;
+
+        BufferDurations(int minBufferMs, int maxBufferMs, int bufferForPlaybackMs,
+                        int bufferForPlaybackAfterRebufferMs, int backBufferMs) {
+            this.minBufferMs = minBufferMs;
+            this.maxBufferMs = maxBufferMs;
+            this.bufferForPlaybackMs = bufferForPlaybackMs;
+            this.bufferForPlaybackAfterRebufferMs = bufferForPlaybackAfterRebufferMs;
+            this.backBufferMs = backBufferMs;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof BufferDurations)) {
+                return false;
+            }
+            BufferDurations other = (BufferDurations) o;
+            return minBufferMs == other.minBufferMs
+                    && maxBufferMs == other.maxBufferMs
+                    && bufferForPlaybackMs == other.bufferForPlaybackMs
+                    && bufferForPlaybackAfterRebufferMs == other.bufferForPlaybackAfterRebufferMs
+                    && backBufferMs == other.backBufferMs;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = minBufferMs;
+            result = 31 * result + maxBufferMs;
+            result = 31 * result + bufferForPlaybackMs;
+            result = 31 * result + bufferForPlaybackAfterRebufferMs;
+            result = 31 * result + backBufferMs;
+            return result;
+        }
+
+        static final BufferDurations DEFAULT = new BufferDurations(
+                DefaultLoadControl.DEFAULT_MIN_BUFFER_MS,
+                DefaultLoadControl.DEFAULT_MAX_BUFFER_MS,
+                DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_MS,
+                DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS,
+                DefaultLoadControl.DEFAULT_BACK_BUFFER_DURATION_MS);
+    }
+
+    private final Context context;
+    private final BufferBudget bufferBudget;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ArrayDeque<PooledPlayer> idlePlayers = new ArrayDeque<>();
+    private final Runnable trimRunnable = this::trimExpired;
+    private int maxSize = DEFAULT_MAX_SIZE;
+    private long idleTimeoutMs = DEFAULT_IDLE_TIMEOUT_MS;
+
+    VideoPlayerPool(Context context, BufferBudget bufferBudget) {
+        this.context = context.getApplicationContext();
+        this.bufferBudget = bufferBudget;
+    }
+
+    /**
+     * Changes the pool bounds and builds players until {@code maxSize} idle players are available.
+     */
+    void configure(int maxSize, long idleTimeoutMs) {
+        this.maxSize = Math.max(0, maxSize);
+        this.idleTimeoutMs = Math.max(0, idleTimeoutMs);
+        while (idlePlayers.size() > this.maxSize) {
+            idlePlayers.removeLast().exoPlayer.release();
+        }
+        prewarm();
+    }
+
+    /**
+     * Builds the renderers factory, track selector and load control of a player, the slow part of
+     * building one. May be called on any thread.
+     */
+    PlayerComponents buildComponents(BufferDurations bufferDurations) {
+        RenderersFactory renderersFactory = new DefaultRenderersFactory(context);
+        StartupTrackSelectionFactory trackSelectionFactory = new StartupTrackSelectionFactory();
+        DefaultTrackSelector trackSelector = new DefaultTrackSelector(context, trackSelectionFactory);
+        DefaultLoadControl defaultLoadControl = new DefaultLoadControl.Builder()
+                .setBufferDurationsMs(
+                        bufferDurations.minBufferMs,
+                        bufferDurations.maxBufferMs,
+                        bufferDurations.bufferForPlaybackMs,
+                        bufferDurations.bufferForPlaybackAfterRebufferMs)
+                .setBackBuffer(bufferDurations.backBufferMs, false)
+                .build();
+        BudgetedLoadControl loadControl = new BudgetedLoadControl(defaultLoadControl, bufferBudget,
+                Math.max(bufferDurations.bufferForPlaybackMs, bufferDurations.bufferForPlaybackAfterRebufferMs));
+        return new PlayerComponents(trackSelector, renderersFactory, loadControl, trackSelectionFactory,
+                bufferDurations.equals(BufferDurations.DEFAULT));
+    }
+
+    /**
+     * Takes an idle player when {@code components} have the defaults pooled players are built with,
+     * or else builds one from them. The player counts against the buffer budget until released.
+     */
+    PooledPlayer acquire(PlayerComponents components) {
+        PooledPlayer player = components.reusable ? idlePlayers.pollFirst() : null;
+        if (player == null) {
+            player = build(components);
+        }
+        bufferBudget.register(player.loadControl);
+        return player;
+    }
+
+    /** Resets {@code player} and keeps it for reuse, or releases it when the pool is full. */
+    void release(PooledPlayer player) {
+        bufferBudget.unregister(player.loadControl);
+        if (!player.reusable || idlePlayers.size() >= maxSize || idleTimeoutMs == 0) {
+            player.exoPlayer.release();
+            return;
+        }
+        player.reset(context);
+        player.releasedAtMs = SystemClock.elapsedRealtime();
+        idlePlayers.addFirst(player);
+        scheduleTrim();
+    }
+
+    void clear() {
+        handler.removeCallbacksAndMessages(null);
+        for (PooledPlayer player : idlePlayers) {
+            player.exoPlayer.release();
+        }
+        idlePlayers.clear();
+    }
+
+    /** Builds a player on the main looper, which its events and calls use. */
+    private PooledPlayer build(PlayerComponents components) {
+        SimpleExoPlayer exoPlayer = new SimpleExoPlayer.Builder(context, components.renderersFactory)
+                .setTrackSelector(components.trackSelector)
+                .setLoadControl(components.loadControl)
+                .setBandwidthMeter(VideoBandwidthMeter.Companion.getInstance(context).getBandwidthMeter())
+                .setLooper(Looper.getMainLooper())
+                .build();
+        return new PooledPlayer(exoPlayer, components);
+    }
+
+    /** Builds one idle player per main looper message, so that pre-warming doesn't drop frames. */
+    private void prewarm() {
+        handler.post(() -> {
+            if (idlePlayers.size() >= maxSize || idleTimeoutMs == 0) {
+                return;
+            }
+            PooledPlayer player = build(buildComponents(BufferDurations.DEFAULT));
+            player.releasedAtMs = SystemClock.elapsedRealtime();
+            idlePlayers.addLast(player);
+            scheduleTrim();
+            prewarm();
+        });
+    }
+
+    private void scheduleTrim() {
+        handler.removeCallbacks(trimRunnable);
+        if (!idlePlayers.isEmpty()) {
+            handler.postDelayed(trimRunnable, idleTimeoutMs);
+        }
+    }
+
+    private void trimExpired() {
+        long now = SystemClock.elapsedRealtime();
+        Iterator<PooledPlayer> iterator = idlePlayers.iterator();
+        while (iterator.hasNext()) {
+            PooledPlayer player = iterator.next();
+            if (now - player.releasedAtMs >= idleTimeoutMs) {
+                player.exoPlayer.release();
+                iterator.remove();
+            }
+        }
+        if (!idlePlayers.isEmpty()) {
+            long oldestReleasedAtMs = Long.MAX_VALUE;
+            for (PooledPlayer player : idlePlayers) {
+                oldestReleasedAtMs = Math.min(oldestReleasedAtMs, player.releasedAtMs);
+            }
+            handler.postDelayed(trimRunnable, Math.max(0, oldestReleasedAtMs + idleTimeoutMs - now));
+        }
+    }
+}
@@ -0,0 +1,140 @@
+// Copyright 2017 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.videoplayer;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.flutter.plugin.common.EventChannel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class BatchingEventSinkTest {
+
+    private BatchingEventSink sink;
+    private RecordingEventSink delegate;
+
+    @Before
+    public void setUp() {
+        sink = new BatchingEventSink();
+        delegate = new RecordingEventSink();
+    }
+
+    @Test
+    public void queuesEventsUntilTheDelegateIsSet() {
+        sink.success(event("initialized"));
+        ShadowLooper.idleMainLooper();
+        assertTrue(delegate.events.isEmpty());
+
+        sink.setDelegate(delegate);
+        ShadowLooper.idleMainLooper();
+
+        assertEquals(Collections.singletonList(event("initialized")), delegate.events);
+    }
+
+    @Test
+    public void keepsOnlyTheLatestCoalescableEvent() {
+        sink.setDelegate(delegate);
+        sink.success(positionUpdate(1));
+        sink.success(positionUpdate(2));
+        sink.success(positionUpdate(3));
+        ShadowLooper.idleMainLooper();
+
+        assertEquals(Collections.singletonList(positionUpdate(3)), delegate.events);
+    }
+
+    @Test
+    public void coalescesWhileNobodyListens() {
+        sink.success(positionUpdate(1));
+        ShadowLooper.idleMainLooper();
+        sink.success(positionUpdate(2));
+        ShadowLooper.idleMainLooper();
+
+        sink.setDelegate(delegate);
+        ShadowLooper.idleMainLooper();
+
+        assertEquals(Collections.singletonList(positionUpdate(2)), delegate.events);
+    }
+
+    @Test
+    public void deliversOtherEventsInOrder() {
+        sink.setDelegate(delegate);
+        sink.success(event("bufferingStart"));
+        sink.success(positionUpdate(1));
+        sink.success(event("bufferingEnd"));
+        sink.success(event("completed"));
+        ShadowLooper.idleMainLooper();
+
+        assertEquals(Arrays.asList(
+                event("bufferingStart"), positionUpdate(1), event("bufferingEnd"), event("completed")),
+                delegate.events);
+    }
+
+    @Test
+    public void forwardsErrorsAndEndOfStream() {
+        sink.setDelegate(delegate);
+        sink.success(event("initialized"));
+        sink.error("VideoError", "Source error", null);
+        sink.endOfStream();
+        ShadowLooper.idleMainLooper();
+
+        assertEquals(Arrays.asList(event("initialized"), "error:VideoError:Source error", "endOfStream"),
+                delegate.events);
+    }
+
+    @Test
+    public void dropsEventsAfterEndOfStream() {
+        sink.setDelegate(delegate);
+        sink.endOfStream();
+        sink.success(event("completed"));
+        sink.error("VideoError", "Source error", null);
+        ShadowLooper.idleMainLooper();
+
+        assertEquals(Collections.singletonList("endOfStream"), delegate.events);
+    }
+
+    private static Map<String, Object> event(String name) {
+        Map<String, Object> event = new HashMap<>();
+        event.put("event", name);
+        return event;
+    }
+
+    private static Map<String, Object> positionUpdate(long position) {
+        Map<String, Object> event = event("positionUpdate");
+        event.put("position", position);
+        return event;
+    }
+
+    private static final class RecordingEventSink implements EventChannel.EventSink {
+        final List<Object> events = new ArrayList<>();
+
+        @Override
+        public void success(Object event) {
+            events.add(event);
+        }
+
+        @Override
+        public void error(String code, String message, Object details) {
+            events.add("error:" + code + ":" + message);
+        }
+
+        @Override
+        public void endOfStream() {
+            events.add("endOfStream");
+        }
+    }
+}
@@ -0,0 +1,80 @@
+// Copyright 2017 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.videoplayer;
+
+import com.google.android.exoplayer2.DefaultLoadControl;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class BufferBudgetTest {
+
+    private static final int MIN_BUFFER_MS = 2500;
+
+    private BufferBudget budget;
+
+    @Before
+    public void setUp() {
+        budget = new BufferBudget();
+    }
+
+    @Test
+    public void unlimitedByDefault() {
+        BudgetedLoadControl loadControl = register();
+
+        assertEquals(BufferBudget.UNLIMITED, budget.shareOf(loadControl));
+    }
+
+    @Test
+    public void playingPlayerGetsTheLargerShare() {
+        budget.setTotalBytes(1000);
+        BudgetedLoadControl playing = register();
+        BudgetedLoadControl paused = register();
+        playing.setPlaying(true);
+
+        assertEquals(1000 * BufferBudget.PLAYING_WEIGHT / (BufferBudget.PLAYING_WEIGHT + 1),
+                budget.shareOf(playing));
+        assertEquals(1000 / (BufferBudget.PLAYING_WEIGHT + 1), budget.shareOf(paused));
+    }
+
+    @Test
+    public void unregisteringGivesTheRestMore() {
+        budget.setTotalBytes(1000);
+        BudgetedLoadControl kept = register();
+        BudgetedLoadControl released = register();
+        assertEquals(500, budget.shareOf(kept));
+
+        budget.unregister(released);
+
+        assertEquals(1000, budget.shareOf(kept));
+    }
+
+    @Test
+    public void trimmedPlayerOnlyLoadsWhatStartsPlayback() {
+        BudgetedLoadControl loadControl = register();
+        loadControl.setTrimmed(true);
+
+        assertTrue(loadControl.shouldContinueLoading(0, (MIN_BUFFER_MS - 1) * 1000L, 1f));
+        assertFalse(loadControl.shouldContinueLoading(0, MIN_BUFFER_MS * 1000L, 1f));
+
+        loadControl.setPlaying(true);
+
+        assertTrue(loadControl.shouldContinueLoading(0, MIN_BUFFER_MS * 1000L, 1f));
+    }
+
+    private BudgetedLoadControl register() {
+        BudgetedLoadControl loadControl =
+                new BudgetedLoadControl(new DefaultLoadControl.Builder().build(), budget, MIN_BUFFER_MS);
+        budget.register(loadControl);
+        return loadControl;
+    }
+}
@@ -0,0 +1,139 @@
+// Copyright 2017 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.videoplayer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DecoderGovernorTest {
+
+    private final List<FakeClient> suspended = new ArrayList<>();
+    private DecoderGovernor governor;
+
+    @Before
+    public void setUp() {
+        governor = new DecoderGovernor();
+    }
+
+    @Test
+    public void unlimitedNeverSuspends() {
+        for (int i = 0; i < 5; i++) {
+            governor.activate(new FakeClient(false, false));
+        }
+        assertTrue(suspended.isEmpty());
+    }
+
+    @Test
+    public void suspendsOffScreenPausedPlayerFirst() {
+        governor.setMaxActive(2);
+        FakeClient visiblePaused = new FakeClient(false, true);
+        FakeClient hiddenPaused = new FakeClient(false, false);
+        governor.activate(visiblePaused);
+        governor.activate(hiddenPaused);
+
+        governor.activate(new FakeClient(true, true));
+
+        assertEquals(Collections.singletonList(hiddenPaused), suspended);
+    }
+
+    @Test
+    public void suspendsPausedPlayerBeforePlayingOne() {
+        governor.setMaxActive(2);
+        FakeClient playing = new FakeClient(true, true);
+        FakeClient paused = new FakeClient(false, true);
+        governor.activate(playing);
+        governor.activate(paused);
+
+        governor.activate(new FakeClient(true, true));
+
+        assertEquals(Collections.singletonList(paused), suspended);
+    }
+
+    @Test
+    public void suspendsLeastRecentlyUsedPlayingPlayer() {
+        governor.setMaxActive(2);
+        FakeClient first = new FakeClient(true, true);
+        FakeClient second = new FakeClient(true, true);
+        governor.activate(first);
+        governor.activate(second);
+        // Using the first one again makes the second one the least recently used.
+        governor.activate(first);
+
+        governor.activate(new FakeClient(true, true));
+
+        assertEquals(Collections.singletonList(second), suspended);
+    }
+
+    @Test
+    public void neverSuspendsTheActivatedPlayer() {
+        governor.setMaxActive(1);
+        FakeClient playing = new FakeClient(true, true);
+        FakeClient hiddenPaused = new FakeClient(false, false);
+        governor.activate(playing);
+
+        governor.activate(hiddenPaused);
+
+        assertEquals(Collections.singletonList(playing), suspended);
+    }
+
+    @Test
+    public void loweringTheLimitSuspendsPlayers() {
+        FakeClient first = new FakeClient(false, true);
+        FakeClient second = new FakeClient(false, true);
+        FakeClient third = new FakeClient(false, true);
+        governor.activate(first);
+        governor.activate(second);
+        governor.activate(third);
+
+        governor.setMaxActive(1);
+
+        assertEquals(Arrays.asList(first, second), suspended);
+    }
+
+    @Test
+    public void removedPlayerIsNotSuspended() {
+        governor.setMaxActive(1);
+        FakeClient removed = new FakeClient(false, false);
+        governor.activate(removed);
+        governor.remove(removed);
+
+        governor.activate(new FakeClient(true, true));
+
+        assertTrue(suspended.isEmpty());
+    }
+
+    private final class FakeClient implements DecoderGovernor.Client {
+        private final boolean playing;
+        private final boolean visible;
+
+        FakeClient(boolean playing, boolean visible) {
+            this.playing = playing;
+            this.visible = visible;
+        }
+
+        @Override
+        public boolean isPlaying() {
+            return playing;
+        }
+
+        @Override
+        public boolean isVisible() {
+            return visible;
+        }
+
+        @Override
+        public void suspend() {
+            suspended.add(this);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+// Copyright 2017 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+// Compares delivering position updates as maps on a player's event channel
+// with delivering them as binary records, see
+// VideoPlayerController.useBinaryEvents.
+//
+// For each encoding it reports the time to decode an event and apply it to
+// the controller, and the bytes of platform message per event, which both the
+// platform and Dart allocate for every message.
+//
+// Run with: flutter test benchmark/binary_events_benchmark.dart
+
+import 'dart:typed_data';
+
+import 'package:flutter/services.dart';
+import 'package:flutter_test/flutter_test.dart';
+import 'package:video_player/video_player.dart';
+
+const int _eventCount = 20000;
+const int _warmUpCount = 2000;
+const int _recordSize = 1 + 8 + 16;
+
+void main() {
+  TestWidgetsFlutterBinding.ensureInitialized();
+
+  const MethodChannel channel = MethodChannel('flutter.io/videoPlayer');
+  int nextTextureId = 1;
+
+  setUp(() {
+    channel.setMockMethodCallHandler((MethodCall call) async {
+      if (call.method == 'create') {
+        final int textureId = nextTextureId++;
+        MethodChannel('flutter.io/videoPlayer/videoEvents$textureId')
+            .setMockMethodCallHandler((MethodCall call) async => null);
+        return <String, dynamic>{'textureId': textureId};
+      }
+      return null;
+    });
+  });
+
+  tearDown(() {
+    VideoPlayerController.useBinaryEvents = false;
+  });
+
+  Future<VideoPlayerController> createController(bool binaryEvents) async {
+    VideoPlayerController.useBinaryEvents = binaryEvents;
+    final VideoPlayerController controller =
+        VideoPlayerController.network('https://example.com/video.mp4');
+    // Never completes, no player sends initialized.
+    controller.initialize();
+    // Texture ids start at 1, 0 stands for none yet.
+    while (controller.textureId == 0) {
+      await Future<void>.delayed(Duration.zero);
+    }
+    return controller;
+  }
+
+  Future<Duration> deliver(String channelName, List<ByteData> messages) async {
+    final BinaryMessenger messenger =
+        ServicesBinding.instance!.defaultBinaryMessenger;
+    final Stopwatch stopwatch = Stopwatch()..start();
+    for (final ByteData message in messages) {
+      await messenger.handlePlatformMessage(
+          channelName, message, (ByteData? reply) {});
+    }
+    // Stream listeners run in later microtasks.
+    await Future<void>.delayed(Duration.zero);
+    stopwatch.stop();
+    return stopwatch.elapsed;
+  }
+
+  List<ByteData> mapMessages(int from, int count) {
+    return List<ByteData>.generate(count, (int i) {
+      final int position = from + i;
+      return const StandardMethodCodec()
+          .encodeSuccessEnvelope(<String, dynamic>{
+        'event': 'positionUpdate',
+        'position': position,
+        'values': <List<int>>[
+          <int>[0, position + 5000]
+        ],
+      });
+    });
+  }
+
+  List<ByteData> binaryMessages(
+      int textureId, int from, int count, int recordsPerMessage) {
+    return List<ByteData>.generate(count ~/ recordsPerMessage, (int i) {
+      final ByteData message = ByteData(_recordSize * recordsPerMessage);
+      for (int r = 0; r < recordsPerMessage; r++) {
+        final int position = from + i * recordsPerMessage + r;
+        final int offset = r * _recordSize;
+        message.setUint8(offset, 1);
+        message.setInt64(offset + 1, textureId, Endian.little);
+        message.setInt64(offset + 9, position, Endian.little);
+        message.setInt64(offset + 17, position + 5000, Endian.little);
+      }
+      return message;
+    });
+  }
+
+  int totalBytes(List<ByteData> messages) => messages.fold(
+      0, (int sum, ByteData message) => sum + message.lengthInBytes);
+
+  void report(String name, Duration elapsed, List<ByteData> messages) {
+    final double microsPerEvent = elapsed.inMicroseconds / _eventCount;
+    final double bytesPerEvent = totalBytes(messages) / _eventCount;
+    print('$name: ${microsPerEvent.toStringAsFixed(2)} us/event, '
+        '${bytesPerEvent.toStringAsFixed(1)} bytes/event, '
+        '${messages.length} messages');
+  }
+
+  test('map events', () async {
+    final VideoPlayerController controller = await createController(false);
+    final String channelName =
+        'flutter.io/videoPlayer/videoEvents${controller.textureId}';
+    await deliver(channelName, mapMessages(0, _warmUpCount));
+
+    final List<ByteData> messages = mapMessages(_warmUpCount, _eventCount);
+    final Duration elapsed = await deliver(channelName, messages);
+    expect(controller.value.position,
+        const Duration(milliseconds: _warmUpCount + _eventCount - 1));
+    report('map', elapsed, messages);
+    await controller.dispose();
+  });
+
+  for (final int recordsPerMessage in <int>[1, 10]) {
+    test('binary events, $recordsPerMessage per message', () async {
+      final VideoPlayerController controller = await createController(true);
+      const String channelName = 'flutter.io/videoPlayer/binaryEvents';
+      await deliver(
+          channelName,
+          binaryMessages(
+              controller.textureId, 0, _warmUpCount, recordsPerMessage));
+
+      final List<ByteData> messages = binaryMessages(
+          controller.textureId, _warmUpCount, _eventCount, recordsPerMessage);
+      final Duration elapsed = await deliver(channelName, messages);
+      expect(controller.value.position,
+          const Duration(milliseconds: _warmUpCount + _eventCount - 1));
+      report('binary x$recordsPerMessage', elapsed, messages);
+      await controller.dispose();
+    });
+  }
+}
@@ -3,6 +3,7 @@
 // found in the LICENSE file.
 
 import 'dart:async';
+import 'dart:convert';
 import 'dart:core';
 import 'dart:io';
 
@@ -27,10 +28,296 @@ class DownloadState {
   final double progress;
 }
 
+/// Which completed downloads are removed first when the download quota is
+/// exceeded.
+enum DownloadEvictionPolicy { leastRecentlyPlayed, oldestCompleted }
+
+/// Disk space used by downloads, as recorded in the download index.
+class DownloadUsage {
+  DownloadUsage(this.totalBytes, this.maxBytes, this.bytesByUri,
+      this.pinnedUris);
+
+  final int totalBytes;
+
+  /// The quota, 0 when downloads are unlimited.
+  final int maxBytes;
+
+  final Map<String, int> bytesByUri;
+
+  final Set<String> pinnedUris;
+}
+
 class DownloadNotifier extends ValueNotifier<DownloadState> {
   DownloadNotifier(DownloadState value) : super(value);
 }
 
+/// Byte counters of the playback cache shared by all players.
+class PlaybackCacheStats {
+  PlaybackCacheStats(this.hitBytes, this.missBytes, this.cacheBytes);
+
+  /// Bytes players read from the cache.
+  final int hitBytes;
+
+  /// Bytes players had to fetch from the network.
+  final int missBytes;
+
+  /// Bytes currently stored in the cache.
+  final int cacheBytes;
+
+  double get hitRatio {
+    final int total = hitBytes + missBytes;
+    return total == 0 ? 0.0 : hitBytes / total;
+  }
+
+  @override
+  String toString() => '$runtimeType(hitBytes: $hitBytes, '
+      'missBytes: $missBytes, cacheBytes: $cacheBytes)';
+}
+
+/// How much media a [VideoPlayerController] buffers ahead of and behind the
+/// playback position. The defaults are the platform's.
+class BufferOptions {
+  const BufferOptions({
+    this.minBuffer = const Duration(seconds: 50),
+    this.maxBuffer = const Duration(seconds: 50),
+    this.bufferForPlayback = const Duration(milliseconds: 2500),
+    this.bufferForPlaybackAfterRebuffer = const Duration(seconds: 5),
+    this.backBuffer = Duration.zero,
+  });
+
+  /// The buffer that is always kept loaded.
+  final Duration minBuffer;
+
+  /// The buffer at which loading pauses.
+  final Duration maxBuffer;
+
+  /// The buffer needed to start playback, or to resume after a seek.
+  final Duration bufferForPlayback;
+
+  /// The buffer needed to resume playback after running out of media.
+  final Duration bufferForPlaybackAfterRebuffer;
+
+  /// The media kept behind the playback position for quick seeks back.
+  final Duration backBuffer;
+
+  Map<String, dynamic> _toMap() => <String, dynamic>{
+        'minBufferMs': minBuffer.inMilliseconds,
+        'maxBufferMs': maxBuffer.inMilliseconds,
+        'bufferForPlaybackMs': bufferForPlayback.inMilliseconds,
+        'bufferForPlaybackAfterRebufferMs':
+            bufferForPlaybackAfterRebuffer.inMilliseconds,
+        'backBufferMs': backBuffer.inMilliseconds,
+      };
+
+  @override
+  String toString() => '$runtimeType(minBuffer: $minBuffer, '
+      'maxBuffer: $maxBuffer, bufferForPlayback: $bufferForPlayback, '
+      'bufferForPlaybackAfterRebuffer: $bufferForPlaybackAfterRebuffer, '
+      'backBuffer: $backBuffer)';
+}
+
+/// How a controller plays live streams, see
+/// [VideoPlayerController.liveOptions].
+///
+/// Playback is kept [targetOffset] behind the live edge by playing slightly
+/// slower or faster, between [minPlaybackSpeed] and [maxPlaybackSpeed]. A
+/// null value is taken from the stream's manifest, or the platform default.
+class LiveOptions {
+  const LiveOptions({
+    required this.targetOffset,
+    this.minOffset,
+    this.maxOffset,
+    this.minPlaybackSpeed,
+    this.maxPlaybackSpeed,
+  });
+
+  /// The distance from the live edge playback aims for.
+  final Duration targetOffset;
+
+  /// The smallest distance from the live edge the target may be moved to.
+  final Duration? minOffset;
+
+  /// The largest distance from the live edge the target may be moved to.
+  final Duration? maxOffset;
+
+  /// The slowest speed used to fall back to the target offset.
+  final double? minPlaybackSpeed;
+
+  /// The fastest speed used to catch up with the target offset, 1.0 to never
+  /// play faster.
+  final double? maxPlaybackSpeed;
+
+  Map<String, dynamic> _toMap() => <String, dynamic>{
+        'targetOffsetMs': targetOffset.inMilliseconds,
+        if (minOffset != null) 'minOffsetMs': minOffset!.inMilliseconds,
+        if (maxOffset != null) 'maxOffsetMs': maxOffset!.inMilliseconds,
+        if (minPlaybackSpeed != null) 'minPlaybackSpeed': minPlaybackSpeed,
+        if (maxPlaybackSpeed != null) 'maxPlaybackSpeed': maxPlaybackSpeed,
+      };
+
+  @override
+  String toString() => '$runtimeType(targetOffset: $targetOffset, '
+      'minOffset: $minOffset, maxOffset: $maxOffset, '
+      'minPlaybackSpeed: $minPlaybackSpeed, '
+      'maxPlaybackSpeed: $maxPlaybackSpeed)';
+}
+
+/// How a controller picks the first variant of an adaptive stream, from the
+/// bandwidth measured by earlier controllers on the same network type.
+///
+/// [fastestFirstFrame] starts on a variant well within the estimate,
+/// [bestQuality] on the highest one the estimate allows, and [balanced] in
+/// between. The choice also affects later switches.
+enum StartupPolicy { balanced, fastestFirstFrame, bestQuality }
+
+/// Why the played variant changed, in the order of the platform's
+/// selection reasons.
+enum ResolutionSwitchReason { unknown, initial, manual, adaptive, trickPlay }
+
+/// Which variants of an adaptive stream a controller may play, see
+/// [VideoPlayerController.setResolutionPolicy].
+class ResolutionPolicy {
+  /// Adapts to the bandwidth between the given bounds, a null bound leaves
+  /// that side open.
+  const ResolutionPolicy.auto({
+    this.maxBitrate,
+    this.maxHeight,
+    this.minBitrate,
+    this.minHeight,
+  }) : pinnedTrackIndex = null;
+
+  /// Plays only the variant [trackIndex] of [VideoPlayerValue.resolutions].
+  const ResolutionPolicy.pinned(int trackIndex)
+      : pinnedTrackIndex = trackIndex,
+        maxBitrate = null,
+        maxHeight = null,
+        minBitrate = null,
+        minHeight = null;
+
+  final int? maxBitrate;
+  final int? maxHeight;
+  final int? minBitrate;
+  final int? minHeight;
+  final int? pinnedTrackIndex;
+
+  @override
+  String toString() => '$runtimeType(maxBitrate: $maxBitrate, '
+      'maxHeight: $maxHeight, minBitrate: $minBitrate, '
+      'minHeight: $minHeight, pinnedTrackIndex: $pinnedTrackIndex)';
+}
+
+/// Quality of experience of one controller's playback so far.
+class PlaybackMetrics {
+  PlaybackMetrics._fromMap(Map<dynamic, dynamic> map)
+      : timeToFirstFrame = _optionalDuration(map['timeToFirstFrame']),
+        rebufferCount = map['rebufferCount'],
+        rebufferDuration = Duration(milliseconds: map['rebufferDuration']),
+        playingDuration = Duration(milliseconds: map['playingDuration']),
+        droppedFrames = map['droppedFrames'],
+        videoDecoderName = map['videoDecoderName'],
+        videoDecoderInitTime = _optionalDuration(map['videoDecoderInitTime']),
+        bandwidthEstimate = map['bandwidthEstimate'],
+        bytesLoaded = map['bytesLoaded'],
+        bitrate = map['bitrate'] >= 0 ? map['bitrate'] : null,
+        bitrateSwitches = map['bitrateSwitches'];
+
+  static Duration? _optionalDuration(int milliseconds) =>
+      milliseconds < 0 ? null : Duration(milliseconds: milliseconds);
+
+  /// From creating the controller to rendering the first frame, null until
+  /// then.
+  final Duration? timeToFirstFrame;
+
+  /// How often playback waited for media after the first frame, seeks not
+  /// included.
+  final int rebufferCount;
+  final Duration rebufferDuration;
+  final Duration playingDuration;
+  final int droppedFrames;
+  final String? videoDecoderName;
+  final Duration? videoDecoderInitTime;
+
+  /// The estimated bandwidth in bits per second.
+  final int bandwidthEstimate;
+  final int bytesLoaded;
+
+  /// The bitrate of the variant being played, null if unknown.
+  final int? bitrate;
+  final int bitrateSwitches;
+
+  /// The share of the time spent waiting for media while meant to play.
+  double get rebufferRatio {
+    final int total =
+        rebufferDuration.inMilliseconds + playingDuration.inMilliseconds;
+    return total == 0 ? 0.0 : rebufferDuration.inMilliseconds / total;
+  }
+
+  @override
+  String toString() => '$runtimeType('
+      'timeToFirstFrame: $timeToFirstFrame, '
+      'rebufferCount: $rebufferCount, '
+      'rebufferDuration: $rebufferDuration, '
+      'droppedFrames: $droppedFrames, '
+      'videoDecoderInitTime: $videoDecoderInitTime, '
+      'bandwidthEstimate: $bandwidthEstimate, '
+      'bytesLoaded: $bytesLoaded, '
+      'bitrate: $bitrate, '
+      'bitrateSwitches: $bitrateSwitches)';
+}
+
+/// Transfer of one HTTP request made by the shared HTTP stack.
+class HttpRequestStats {
+  HttpRequestStats(this.url, this.bytes, this.duration, this.error);
+
+  final String url;
+  final int bytes;
+  final Duration duration;
+
+  /// Why the request failed, null when it succeeded.
+  final String? error;
+
+  @override
+  String toString() => '$runtimeType(url: $url, bytes: $bytes, '
+      'duration: $duration, error: $error)';
+}
+
+/// Counters of the HTTP stack shared by playback, preloads and downloads.
+class HttpStats {
+  HttpStats(this.requests, this.bytesReceived, this.recentRequests);
+
+  final int requests;
+
+  final int bytesReceived;
+
+  /// The most recent requests, oldest first.
+  final List<HttpRequestStats> recentRequests;
+
+  @override
+  String toString() =>
+      '$runtimeType(requests: $requests, bytesReceived: $bytesReceived)';
+}
+
+/// A release of memory by the platform under memory pressure, see
+/// [VideoPlayerController.memoryTrimEvents].
+class MemoryTrimEvent {
+  MemoryTrimEvent(this.level, this.stage, this.suspendedPlayers);
+
+  /// The platform's trim level, such as Android's `TRIM_MEMORY_RUNNING_LOW`.
+  final int level;
+
+  /// How much was released: 1 idle players and shared caches, 2 also the
+  /// forward buffer of paused controllers, 3 also the decoders of every
+  /// controller that is not playing.
+  final int stage;
+
+  /// The controllers suspended by this trim.
+  final int suspendedPlayers;
+
+  @override
+  String toString() => '$runtimeType(level: $level, stage: $stage, '
+      'suspendedPlayers: $suspendedPlayers)';
+}
+
 class DurationRange {
   DurationRange(this.start, this.end);
 
@@ -62,7 +349,11 @@ class VideoPlayerValue {
     this.volume = 1.0,
     this.speed = 1.0,
     this.resolutionIndex,
+    this.resolutionBitrate,
+    this.resolutionSwitchReason,
     this.resolutions,
+    this.playlistIndex,
+    this.liveOffset,
     this.errorDescription});
 
   VideoPlayerValue.uninitialized() : this(duration: null);
@@ -99,8 +390,22 @@ class VideoPlayerValue {
   ///当前分辨率
   final int? resolutionIndex;
 
+  /// The bitrate of the variant played at [resolutionIndex], if known.
+  final int? resolutionBitrate;
+
+  /// Why the variant at [resolutionIndex] was switched to.
+  final ResolutionSwitchReason? resolutionSwitchReason;
+
   final Map<int, String>? resolutions;
 
+  /// The index of the playlist item being played, null until a playlist is
+  /// set with [VideoPlayerController.setPlaylist].
+  final int? playlistIndex;
+
+  /// How far playback is behind the live edge, null unless a live stream is
+  /// played.
+  final Duration? liveOffset;
+
   /// A description of the error if present.
   ///
   /// If [hasError] is false this is [null].
@@ -127,7 +432,11 @@ class VideoPlayerValue {
     double? volume,
     double? speed,
     int? resolutionIndex,
+    int? resolutionBitrate,
+    ResolutionSwitchReason? resolutionSwitchReason,
     Map<int, String>? resolutions,
+    int? playlistIndex,
+    Duration? liveOffset,
     String? errorDescription,
     bool forceSetErrorDescription = false}) {
     return VideoPlayerValue(
@@ -141,7 +450,12 @@ class VideoPlayerValue {
       volume: volume ?? this.volume,
       speed: speed ?? this.speed,
       resolutionIndex: resolutionIndex ?? this.resolutionIndex,
+      resolutionBitrate: resolutionBitrate ?? this.resolutionBitrate,
+      resolutionSwitchReason:
+          resolutionSwitchReason ?? this.resolutionSwitchReason,
       resolutions: resolutions ?? this.resolutions,
+      playlistIndex: playlistIndex ?? this.playlistIndex,
+      liveOffset: liveOffset ?? this.liveOffset,
       errorDescription: forceSetErrorDescription
           ? errorDescription
           : (errorDescription ?? this.errorDescription),
@@ -165,6 +479,13 @@ class VideoPlayerValue {
 
 enum DataSourceType { asset, network, file }
 
+/// Where [VideoPlayerController.seekTo] lands relative to the requested
+/// position: exactly on it, or on the previous, next or closest keyframe.
+///
+/// Keyframe seeks start playback without decoding up to the position, so
+/// they are faster. Only supported on Android, elsewhere seeks are exact.
+enum SeekMode { exact, previousSync, nextSync, closestSync }
+
 /// Controls a platform video player, and provides updates when the state is
 /// changing.
 ///
@@ -181,8 +502,14 @@ class VideoPlayerController extends ValueNotifier<VideoPlayerValue> {
   /// The name of the asset is given by the [dataSource] argument and must not be
   /// null. The [package] argument must be non-null when the asset comes from a
   /// package and null otherwise.
-  VideoPlayerController.asset(this.dataSource, {this.package})
+  VideoPlayerController.asset(this.dataSource,
+      {this.package,
+      this.positionUpdateInterval = _defaultPositionUpdateInterval,
+      this.bufferOptions,
+      this.liveOptions,
+      this.startupPolicy = StartupPolicy.balanced})
       : dataSourceType = DataSourceType.asset,
+        contentId = null,
         super(VideoPlayerValue(duration: null));
 
   /// Constructs a [VideoPlayerController] playing a video from obtained from
@@ -190,7 +517,12 @@ class VideoPlayerController extends ValueNotifier<VideoPlayerValue> {
   ///
   /// The URI for the video is given by the [dataSource] argument and must not be
   /// null.
-  VideoPlayerController.network(this.dataSource)
+  VideoPlayerController.network(this.dataSource,
+      {this.positionUpdateInterval = _defaultPositionUpdateInterval,
+      this.bufferOptions,
+      this.liveOptions,
+      this.startupPolicy = StartupPolicy.balanced,
+      this.contentId})
       : dataSourceType = DataSourceType.network,
         package = null,
         super(VideoPlayerValue(duration: null));
@@ -199,10 +531,15 @@ class VideoPlayerController extends ValueNotifier<VideoPlayerValue> {
   ///
   /// This will load the file from the file-URI given by:
   /// `'file://${file.path}'`.
-  VideoPlayerController.file(File file)
+  VideoPlayerController.file(File file,
+      {this.positionUpdateInterval = _defaultPositionUpdateInterval,
+      this.bufferOptions,
+      this.liveOptions,
+      this.startupPolicy = StartupPolicy.balanced})
       : dataSource = 'file://${file.path}',
         dataSourceType = DataSourceType.file,
         package = null,
+        contentId = null,
         super(VideoPlayerValue(duration: null));
 
   int? _textureId = null;
@@ -213,17 +550,418 @@ class VideoPlayerController extends ValueNotifier<VideoPlayerValue> {
   final DataSourceType dataSourceType;
 
   final String? package;
+
+  /// How often the position and buffered range are refreshed while the video
+  /// is loaded.
+  ///
+  /// On Android the platform side pushes these updates itself and only when
+  /// they change; elsewhere [position] is polled at this interval.
+  final Duration positionUpdateInterval;
+
+  /// How much media this controller buffers, null for the platform defaults.
+  ///
+  /// Only supported on Android, where a controller with custom buffer options
+  /// doesn't use a pooled player, see [configurePlayerPool].
+  final BufferOptions? bufferOptions;
+
+  /// How live streams are played, null for the offsets of the manifest.
+  ///
+  /// Only supported on Android.
+  final LiveOptions? liveOptions;
+
+  /// How the first variant of an adaptive stream is picked.
+  ///
+  /// Only supported on Android, where the bandwidth estimate is kept per
+  /// network type across app sessions.
+  final StartupPolicy startupPolicy;
+
+  /// Identifies the media instead of [dataSource], so its download is found
+  /// under this id whatever its url, such as one with a new token.
+  ///
+  /// Progressive media is also cached under this id. HLS, DASH and
+  /// SmoothStreaming media are cached per segment url instead, see
+  /// [configureCacheKeys] to ignore their tokens.
+  ///
+  /// Only supported on Android. See also [configureCacheKeys].
+  final String? contentId;
+
+  static const Duration _defaultPositionUpdateInterval =
+      Duration(milliseconds: 500);
+
+  /// Whether controllers initialized from now on receive their frequent
+  /// events (position, buffering, play state, resolution and download state)
+  /// as compact binary records instead of maps.
+  ///
+  /// Only supported on Android, other platforms keep sending maps.
+  static bool useBinaryEvents = false;
+
   Timer? _timer;
+  bool _nativePositionUpdates = false;
+  Size? _viewportPixels;
   bool _isDisposed = false;
   Completer<void>? _creatingCompleter;
+  Completer<void>? _initializingCompleter;
   StreamSubscription<dynamic>? _eventSubscription;
   _VideoAppLifeCycleObserver? _lifeCycleObserver;
+  /// The metrics sent periodically after [setMetricsInterval].
+  ValueNotifier<PlaybackMetrics?> metricsNotifier = ValueNotifier(null);
   ValueNotifier<DownloadState> downloadNotifier =
   ValueNotifier(DownloadState(DownloadState.UNDOWNLOAD));
 
   @visibleForTesting
   int get textureId => _textureId ?? 0;
 
+  /// Fetches the manifest and the first [maxBytesPerItem] bytes of each of
+  /// [uris] in the background, replacing any preloads still pending.
+  ///
+  /// A controller later created for one of these uris starts from the
+  /// preloaded data. Give the [contentIds] of uris, by uri, whose controllers
+  /// are created with a [contentId]. Adaptive streams preload the variant the
+  /// current bandwidth estimate starts on, their manifests are kept as long
+  /// as [configureManifestCache] allows. Meant for on-demand media. Only
+  /// supported on Android.
+  static Future<void> preload(List<String> uris,
+      {int maxBytesPerItem = 2 * 1024 * 1024,
+      Map<String, String> contentIds = const <String, String>{}}) async {
+    try {
+      await _channel.invokeMethod<void>(
+        'preload',
+        <String, dynamic>{
+          'uris': uris,
+          'maxBytes': maxBytesPerItem,
+          'contentIds': contentIds,
+        },
+      );
+    } on MissingPluginException {
+      // Nothing is preloaded on this platform.
+    }
+  }
+
+  /// Turns the shared playback cache on or off for all network playback and
+  /// limits it to [maxBytes], evicting the least recently used data first.
+  ///
+  /// Preloaded uris read through the cache even when it is disabled. Only
+  /// supported on Android.
+  static Future<void> configurePlaybackCache({
+    bool enabled = true,
+    int maxBytes = 256 * 1024 * 1024,
+  }) async {
+    try {
+      await _channel.invokeMethod<void>(
+        'configurePlaybackCache',
+        <String, dynamic>{'enabled': enabled, 'maxBytes': maxBytes},
+      );
+    } on MissingPluginException {
+      // There is no playback cache on this platform.
+    }
+  }
+
+  /// Returns the hit and miss counters of the playback cache, or null when
+  /// the platform has no playback cache.
+  static Future<PlaybackCacheStats?> getPlaybackCacheStats() async {
+    try {
+      final Map<String, dynamic>? stats =
+          await _channel.invokeMapMethod<String, dynamic>(
+        'getPlaybackCacheStats',
+      );
+      if (stats == null) {
+        return null;
+      }
+      return PlaybackCacheStats(
+          stats['hitBytes'], stats['missBytes'], stats['cacheBytes']);
+    } on MissingPluginException {
+      return null;
+    }
+  }
+
+  /// Configures the HTTP stack shared by playback, preloads and downloads.
+  ///
+  /// [headers] are added to every request and replace those of an earlier
+  /// call. Requests started afterwards use the new settings. Only supported
+  /// on Android.
+  static Future<void> configureHttp({
+    Duration connectTimeout = const Duration(seconds: 8),
+    Duration readTimeout = const Duration(seconds: 8),
+    Map<String, String> headers = const <String, String>{},
+  }) async {
+    try {
+      await _channel.invokeMethod<void>(
+        'configureHttp',
+        <String, dynamic>{
+          'connectTimeout': connectTimeout.inMilliseconds,
+          'readTimeout': readTimeout.inMilliseconds,
+          'headers': headers,
+        },
+      );
+    } on MissingPluginException {
+      // The platform's own HTTP stack is used on this platform.
+    }
+  }
+
+  /// Makes urls that differ only in [ignoredQueryParameters], such as
+  /// expiring CDN tokens, the same media for downloads and caches.
+  ///
+  /// The setting is saved. Call it before creating controllers, whose
+  /// downloads are looked up when they are created. Only supported on
+  /// Android.
+  static Future<void> configureCacheKeys(
+      {List<String> ignoredQueryParameters = const <String>[]}) async {
+    try {
+      await _channel.invokeMethod<void>(
+        'configureCacheKeys',
+        <String, dynamic>{'ignoredQueryParameters': ignoredQueryParameters},
+      );
+    } on MissingPluginException {
+      // Caches are keyed by the full url on this platform.
+    }
+  }
+
+  /// The memory released on each trim-memory callback of the platform.
+  ///
+  /// Only supported on Android, elsewhere the stream stays empty. All
+  /// listeners share one platform subscription.
+  static Stream<MemoryTrimEvent> get memoryTrimEvents => _memoryTrimEvents;
+
+  static final Stream<MemoryTrimEvent> _memoryTrimEvents =
+      const EventChannel('flutter.io/videoPlayer/memoryEvents')
+          .receiveBroadcastStream()
+          .map((dynamic event) => MemoryTrimEvent(
+              event['level'], event['stage'], event['suspendedPlayers']))
+          .handleError((Object error) {},
+              test: (Object error) => error is MissingPluginException);
+
+  /// Returns the counters of the shared HTTP stack, null where unsupported.
+  static Future<HttpStats?> getHttpStats() async {
+    try {
+      final Map<String, dynamic>? stats =
+          await _channel.invokeMapMethod<String, dynamic>('getHttpStats');
+      if (stats == null) {
+        return null;
+      }
+      final List<HttpRequestStats> recentRequests = <HttpRequestStats>[];
+      for (final dynamic request in stats['recentRequests']) {
+        recentRequests.add(HttpRequestStats(
+          request['url'],
+          request['bytes'],
+          Duration(milliseconds: request['durationMs']),
+          request['error'],
+        ));
+      }
+      return HttpStats(
+          stats['requests'], stats['bytesReceived'], recentRequests);
+    } on MissingPluginException {
+      return null;
+    }
+  }
+
+  /// Reuses fetched manifests for [ttl] across players opening the same url,
+  /// [Duration.zero] to always fetch them.
+  ///
+  /// Manifests of live streams are never reused. Only supported on Android.
+  static Future<void> configureManifestCache(
+      {Duration ttl = const Duration(seconds: 30)}) async {
+    try {
+      await _channel.invokeMethod<void>(
+        'configureManifestCache',
+        <String, dynamic>{'ttl': ttl.inMilliseconds},
+      );
+    } on MissingPluginException {
+      // Manifests are fetched per player on this platform.
+    }
+  }
+
+  /// Limits the disk space used by downloads to [maxBytes], 0 for no limit.
+  ///
+  /// When completed downloads exceed the quota, unpinned ones are removed in
+  /// the order given by [policy]. Only supported on Android.
+  static Future<void> setDownloadQuota(int maxBytes,
+      {DownloadEvictionPolicy policy =
+          DownloadEvictionPolicy.leastRecentlyPlayed}) async {
+    try {
+      await _channel.invokeMethod<void>(
+        'setDownloadQuota',
+        <String, dynamic>{
+          'maxBytes': maxBytes,
+          'policy': policy == DownloadEvictionPolicy.oldestCompleted
+              ? 'oldestCompleted'
+              : 'leastRecentlyPlayed',
+        },
+      );
+    } on MissingPluginException {
+      // Downloads are not limited on this platform.
+    }
+  }
+
+  /// Protects the download of [uri] from being removed by the quota.
+  ///
+  /// Pass the [contentId] the media was downloaded with, if any, then [uri]
+  /// only has to be one of its urls. Without it, [uri] matches the download
+  /// ignoring the query parameters given to [configureCacheKeys].
+  static Future<void> pinDownload(String uri, bool pinned,
+      {String? contentId}) async {
+    try {
+      await _channel.invokeMethod<void>(
+        'pinDownload',
+        <String, dynamic>{
+          'uri': uri,
+          'pinned': pinned,
+          if (contentId != null) 'contentId': contentId,
+        },
+      );
+    } on MissingPluginException {
+      // Downloads are not limited on this platform.
+    }
+  }
+
+  /// Returns the disk space used by each download and in total, or null when
+  /// the platform doesn't report it.
+  static Future<DownloadUsage?> getDownloadUsage() async {
+    try {
+      final Map<String, dynamic>? usage =
+          await _channel.invokeMapMethod<String, dynamic>('getDownloadUsage');
+      if (usage == null) {
+        return null;
+      }
+      final Map<String, int> bytesByUri = <String, int>{};
+      final Set<String> pinnedUris = <String>{};
+      for (dynamic download in usage['downloads']) {
+        bytesByUri[download['uri']] = download['bytes'];
+        if (download['pinned']) {
+          pinnedUris.add(download['uri']);
+        }
+      }
+      return DownloadUsage(
+          usage['totalBytes'], usage['maxBytes'], bytesByUri, pinnedUris);
+    } on MissingPluginException {
+      return null;
+    }
+  }
+
+  /// Returns the download state of each of [uris] in one call, without
+  /// creating a player for them.
+  ///
+  /// Give the [contentIds] of uris, by uri, that were downloaded with a
+  /// [contentId]. Uris the platform doesn't report are missing from the
+  /// result.
+  static Future<Map<String, DownloadState>> downloadStates(List<String> uris,
+      {Map<String, String> contentIds = const <String, String>{}}) async {
+    final Map<String, DownloadState> states = <String, DownloadState>{};
+    try {
+      final Map<String, dynamic>? response =
+          await _channel.invokeMapMethod<String, dynamic>(
+        'downloadStates',
+        <String, dynamic>{'uris': uris, 'contentIds': contentIds},
+      );
+      response?.forEach((String uri, dynamic state) {
+        states[uri] =
+            DownloadState(state['state'], progress: state['progress'] ?? 0.0);
+      });
+    } on MissingPluginException {
+      // Download states are only reported through players on this platform.
+    }
+    return states;
+  }
+
+  /// Sets how often the progress of running downloads is reported through
+  /// [downloadNotifier]. State changes are always reported right away.
+  static Future<void> setDownloadProgressInterval(Duration interval) async {
+    try {
+      await _channel.invokeMethod<void>(
+        'setDownloadProgressInterval',
+        <String, dynamic>{'interval': interval.inMilliseconds},
+      );
+    } on MissingPluginException {
+      // Progress is reported at a fixed rate on this platform.
+    }
+  }
+
+  /// Configures how offline downloads share the network.
+  ///
+  /// At most [maxParallelDownloads] downloads run at once, the highest
+  /// priority ones first. [segmentThreads], at least 1, caps the segments
+  /// loaded at a time by all running downloads together, not per download.
+  /// A [maxBytesPerSecond] above 0 caps the combined download throughput so
+  /// playback keeps its bandwidth. The settings are persisted; a new
+  /// [segmentThreads] may only take effect after the running segments finish.
+  /// Only supported on Android.
+  static Future<void> configureDownloads({
+    int maxParallelDownloads = 3,
+    int segmentThreads = 6,
+    int maxBytesPerSecond = 0,
+  }) async {
+    assert(segmentThreads >= 1);
+    try {
+      await _channel.invokeMethod<void>(
+        'configureDownloads',
+        <String, dynamic>{
+          'maxParallelDownloads': maxParallelDownloads,
+          'segmentThreads': segmentThreads,
+          'maxBytesPerSecond': maxBytesPerSecond,
+        },
+      );
+    } on MissingPluginException {
+      // Downloads are scheduled by the platform on this platform.
+    }
+  }
+
+  /// Caps the media buffered by all controllers together at [maxBytes], 0
+  /// for no cap.
+  ///
+  /// The budget is split across live controllers, a playing one getting four
+  /// times the share of a paused one. A controller may always buffer enough
+  /// to start playing. Only supported on Android.
+  static Future<void> setBufferBudget(int maxBytes) async {
+    try {
+      await _channel.invokeMethod<void>(
+        'setBufferBudget',
+        <String, dynamic>{'maxBytes': maxBytes},
+      );
+    } on MissingPluginException {
+      // Buffers are managed by the platform on this platform.
+    }
+  }
+
+  /// Limits how many controllers hold video decoders at once, 0 for no limit.
+  ///
+  /// Over the limit, the least recently used controllers are suspended,
+  /// paused ones without a [VideoPlayer] on screen first. A suspended
+  /// controller keeps its position, resolution and last frame, and resumes
+  /// when it is played or sought. Only supported on Android.
+  static Future<void> setMaxActiveDecoders(int maxActive) async {
+    try {
+      await _channel.invokeMethod<void>(
+        'setMaxActiveDecoders',
+        <String, dynamic>{'maxActive': maxActive},
+      );
+    } on MissingPluginException {
+      // Decoders are managed by the platform on this platform.
+    }
+  }
+
+  /// Configures the pool of idle platform players that [initialize] reuses
+  /// instead of building a new one.
+  ///
+  /// Pooling is off until this is called. Up to [maxSize] players are then
+  /// built ahead of time and disposed players are kept for [idleTimeout]
+  /// before they are released. A [maxSize] of 0 disables pooling again. Only
+  /// supported on Android.
+  static Future<void> configurePlayerPool({
+    int maxSize = 2,
+    Duration idleTimeout = const Duration(seconds: 30),
+  }) async {
+    try {
+      await _channel.invokeMethod<void>(
+        'configurePlayerPool',
+        <String, dynamic>{
+          'maxSize': maxSize,
+          'idleTimeout': idleTimeout.inMilliseconds,
+        },
+      );
+    } on MissingPluginException {
+      // Players are always built from scratch on this platform.
+    }
+  }
+
   Future<void> initialize() async {
     _lifeCycleObserver = _VideoAppLifeCycleObserver(this);
     _lifeCycleObserver!.initialize();
@@ -242,14 +980,35 @@ class VideoPlayerController extends ValueNotifier<VideoPlayerValue> {
       case DataSourceType.file:
         dataSourceDescription = <String, dynamic>{'uri': dataSource};
     }
+    dataSourceDescription['binaryEvents'] = useBinaryEvents;
+    if (bufferOptions != null) {
+      dataSourceDescription['bufferOptions'] = bufferOptions!._toMap();
+    }
+    if (liveOptions != null) {
+      dataSourceDescription['liveOptions'] = liveOptions!._toMap();
+    }
+    dataSourceDescription['startupPolicy'] = startupPolicy.index;
+    if (contentId != null) {
+      dataSourceDescription['contentId'] = contentId;
+    }
+    if (_viewportPixels != null) {
+      dataSourceDescription['viewportWidth'] = _viewportPixels!.width.toInt();
+      dataSourceDescription['viewportHeight'] = _viewportPixels!.height.toInt();
+    }
     final Map<String, dynamic>? response =
     await _channel.invokeMapMethod<String, dynamic>(
       'create',
       dataSourceDescription,
     );
     _textureId = response?['textureId'];
+    if (value.speed != 1.0) {
+      setSpeed(value.speed);
+    }
+    if (useBinaryEvents) {
+      _BinaryEvents.register(textureId, this);
+    }
     _creatingCompleter!.complete(null);
-    final Completer<void> initializingCompleter = Completer<void>();
+    _initializingCompleter = Completer<void>();
 
     DurationRange toDurationRange(dynamic value) {
       final List<dynamic> pair = value;
@@ -267,20 +1026,31 @@ class VideoPlayerController extends ValueNotifier<VideoPlayerValue> {
       final Map<dynamic, dynamic> map = event;
       switch (map['event']) {
         case 'initialized':
+          _onInitialized(
+              Duration(milliseconds: map['duration']),
+              Size(map['width']?.toDouble() ?? 0.0,
+                  map['height']?.toDouble() ?? 0.0));
+          break;
+        case 'playlistItemChanged':
+          final int? duration = map['duration'];
           value = value.copyWith(
-              duration: Duration(milliseconds: map['duration']),
-              size: Size(map['width']?.toDouble() ?? 0.0,
-                  map['height']?.toDouble() ?? 0.0),
-              errorDescription: null,
-              forceSetErrorDescription: true);
-          initializingCompleter.complete(null);
-          _applyLooping();
-          _applyVolume();
-          _applyPlayPause(value.isPlaying);
+            playlistIndex: map['index'],
+            duration: duration != null && duration > 0
+                ? Duration(milliseconds: duration)
+                : null,
+            size: map['width'] != null
+                ? Size(map['width'].toDouble(), map['height'].toDouble())
+                : null,
+          );
           break;
         case 'completed':
-          value = value.copyWith(isPlaying: false, position: value.duration);
-          _cancelTimer();
+          _onCompleted();
+          break;
+        case 'positionUpdate':
+          final List<dynamic> values = map['values'];
+          value = value.copyWith(
+              position: Duration(milliseconds: map['position']),
+              buffered: values.map<DurationRange>(toDurationRange).toList());
           break;
         case 'bufferingUpdate':
           final List<dynamic> values = map['values'];
@@ -299,12 +1069,7 @@ class VideoPlayerController extends ValueNotifier<VideoPlayerValue> {
           break;
         case 'playStateChanged':
           final bool isPlaying = map['isPlaying'];
-
-          if (isPlaying && !(_timer?.isActive == true)) {
-            _startTimer();
-          } else if (!isPlaying) {
-            _cancelTimer();
-          }
+          _syncTimer(isPlaying);
           value = value.copyWith(
               isPlaying: isPlaying,
               errorDescription: null,
@@ -316,8 +1081,17 @@ class VideoPlayerController extends ValueNotifier<VideoPlayerValue> {
           value = value.copyWith(resolutions: resolutions);
           break;
         case 'resolutionChange':
-          final int index = map['index'];
-          value = value.copyWith(resolutionIndex: index);
+          value = value.copyWith(
+              resolutionIndex: map['index'],
+              resolutionBitrate: map['bitrate'],
+              resolutionSwitchReason: _switchReason(map['reason']));
+          break;
+        case 'liveOffset':
+          value = value.copyWith(
+              liveOffset: Duration(milliseconds: map['offset']));
+          break;
+        case 'metrics':
+          metricsNotifier.value = PlaybackMetrics._fromMap(map['metrics']);
           break;
         case 'downloadState':
           final int state = map['state'];
@@ -328,20 +1102,64 @@ class VideoPlayerController extends ValueNotifier<VideoPlayerValue> {
     }
 
     void errorListener(Object obj) {
-      final PlatformException e = obj as PlatformException;
-      if (value == null) {
-        value = VideoPlayerValue.erroneous(e.message ?? "");
-      } else {
-        value = value.copyWith(isPlaying: false, errorDescription: e.message);
-      }
-
-      _cancelTimer();
+      _onError(obj as PlatformException);
     }
 
     _eventSubscription = _eventChannelFor(textureId)
         .receiveBroadcastStream()
         .listen(eventListener, onError: errorListener);
-    return initializingCompleter.future;
+    _applyPositionUpdateInterval();
+    return _initializingCompleter!.future;
+  }
+
+  void _onInitialized(Duration duration, Size size) {
+    value = value.copyWith(
+        duration: duration,
+        size: size,
+        errorDescription: null,
+        forceSetErrorDescription: true);
+    if (!_initializingCompleter!.isCompleted) {
+      _initializingCompleter!.complete(null);
+    }
+    _applyLooping();
+    _applyVolume();
+    _applyPlayPause(value.isPlaying);
+  }
+
+  void _onCompleted() {
+    value = value.copyWith(isPlaying: false, position: value.duration);
+    _cancelTimer();
+  }
+
+  void _onError(PlatformException e) {
+    if (value == null) {
+      value = VideoPlayerValue.erroneous(e.message ?? "");
+    } else {
+      value = value.copyWith(isPlaying: false, errorDescription: e.message);
+    }
+    // The player could not be set up, initialization won't complete otherwise.
+    if (!_initializingCompleter!.isCompleted) {
+      _initializingCompleter!.completeError(e);
+    }
+
+    _cancelTimer();
+  }
+
+  Future<void> _applyPositionUpdateInterval() async {
+    try {
+      await _channel.invokeMethod<void>(
+        'setPositionUpdateInterval',
+        <String, dynamic>{
+          'textureId': _textureId,
+          'interval': positionUpdateInterval.inMilliseconds
+        },
+      );
+      _nativePositionUpdates = true;
+      _cancelTimer();
+    } on MissingPluginException {
+      // The platform side can't push updates, keep polling [position].
+      _nativePositionUpdates = false;
+    }
   }
 
   EventChannel _eventChannelFor(int textureId) {
@@ -354,6 +1172,7 @@ class VideoPlayerController extends ValueNotifier<VideoPlayerValue> {
     if (!_isDisposed) {
       _isDisposed = true;
       _cancelTimer();
+      _BinaryEvents.unregister(textureId, this);
       await _eventSubscription?.cancel();
       await _channel.invokeMethod<void>(
         'dispose',
@@ -363,6 +1182,7 @@ class VideoPlayerController extends ValueNotifier<VideoPlayerValue> {
     _lifeCycleObserver?.dispose();
     _isDisposed = true;
     downloadNotifier.dispose();
+    metricsNotifier.dispose();
     super.dispose();
   }
 
@@ -411,8 +1231,11 @@ class VideoPlayerController extends ValueNotifier<VideoPlayerValue> {
   }
 
   _startTimer() {
+    if (_nativePositionUpdates) {
+      return;
+    }
     _timer = Timer.periodic(
-      const Duration(milliseconds: 500),
+      positionUpdateInterval,
           (Timer timer) async {
         if (_isDisposed) {
           return;
@@ -430,6 +1253,14 @@ class VideoPlayerController extends ValueNotifier<VideoPlayerValue> {
     _timer?.cancel();
   }
 
+  void _syncTimer(bool isPlaying) {
+    if (isPlaying && !(_timer?.isActive == true)) {
+      _startTimer();
+    } else if (!isPlaying) {
+      _cancelTimer();
+    }
+  }
+
   Future<void> _applyVolume() async {
     if (!value.initialized || _isDisposed) {
       return;
@@ -453,7 +1284,10 @@ class VideoPlayerController extends ValueNotifier<VideoPlayerValue> {
     );
   }
 
-  Future<void> seekTo(Duration moment) async {
+  /// Seeks to [moment], or to a keyframe near it depending on [mode].
+  ///
+  /// While [setScrubbing] is on, [mode] is ignored.
+  Future<void> seekTo(Duration moment, {SeekMode mode = SeekMode.exact}) async {
     if (_isDisposed || _textureId == null) {
       return;
     }
@@ -465,10 +1299,30 @@ class VideoPlayerController extends ValueNotifier<VideoPlayerValue> {
     await _channel.invokeMethod<void>('seekTo', <String, dynamic>{
       'textureId': _textureId,
       'location': moment.inMilliseconds,
+      'mode': mode.index,
     });
     value = value.copyWith(position: moment);
   }
 
+  /// Starts or ends scrubbing, such as dragging a progress bar.
+  ///
+  /// While scrubbing, the platform collapses bursts of [seekTo] calls to the
+  /// most recent position and seeks to the closest keyframe. Ending it seeks
+  /// exactly to the last position. Only supported on Android.
+  Future<void> setScrubbing(bool scrubbing) async {
+    if (_isDisposed || _textureId == null) {
+      return;
+    }
+    try {
+      await _channel.invokeMethod<void>('setScrubbing', <String, dynamic>{
+        'textureId': _textureId,
+        'scrubbing': scrubbing,
+      });
+    } on MissingPluginException {
+      // Every seek is exact on this platform.
+    }
+  }
+
   /// Sets the audio volume of [this].
   ///
   /// [volume] indicates a value between 0.0 (silent) and 1.0 (full volume) on a
@@ -478,25 +1332,173 @@ class VideoPlayerController extends ValueNotifier<VideoPlayerValue> {
     await _applyVolume();
   }
 
+  /// Replaces what this controller plays with [dataSources], uris played back
+  /// to back on the same texture.
+  ///
+  /// The next item is prepared while the current one plays, so there is no
+  /// startup gap between items. Playback starts at [startIndex]; the item
+  /// played is reported through [VideoPlayerValue.playlistIndex]. Only
+  /// supported on Android.
+  Future<void> setPlaylist(List<String> dataSources, {int startIndex = 0}) async {
+    if (!value.initialized || _isDisposed) {
+      return;
+    }
+    try {
+      await _channel.invokeMethod<void>(
+        'setPlaylist',
+        <String, dynamic>{
+          'textureId': _textureId,
+          'uris': dataSources,
+          'startIndex': startIndex,
+        },
+      );
+    } on MissingPluginException {
+      // Playlists are not supported on this platform.
+    }
+  }
+
+  /// Inserts [dataSource] into the playlist at [index], or appends it.
+  Future<void> addToPlaylist(String dataSource, {int? index}) async {
+    if (!value.initialized || _isDisposed) {
+      return;
+    }
+    try {
+      await _channel.invokeMethod<void>(
+        'addToPlaylist',
+        <String, dynamic>{
+          'textureId': _textureId,
+          'uri': dataSource,
+          'index': index ?? -1,
+        },
+      );
+    } on MissingPluginException {
+      // Playlists are not supported on this platform.
+    }
+  }
+
+  Future<void> removeFromPlaylist(int index) async {
+    if (!value.initialized || _isDisposed) {
+      return;
+    }
+    try {
+      await _channel.invokeMethod<void>(
+        'removeFromPlaylist',
+        <String, dynamic>{'textureId': _textureId, 'index': index},
+      );
+    } on MissingPluginException {
+      // Playlists are not supported on this platform.
+    }
+  }
+
+  /// Starts playing the playlist item at [index] from its beginning.
+  Future<void> skipTo(int index) async {
+    if (!value.initialized || _isDisposed) {
+      return;
+    }
+    try {
+      await _channel.invokeMethod<void>(
+        'skipTo',
+        <String, dynamic>{'textureId': _textureId, 'index': index},
+      );
+    } on MissingPluginException {
+      // Playlists are not supported on this platform.
+    }
+  }
+
+  /// Returns the playback metrics so far, null where unsupported.
+  Future<PlaybackMetrics?> getMetrics() async {
+    if (_textureId == null || _isDisposed) {
+      return null;
+    }
+    try {
+      final Map<dynamic, dynamic>? metrics = await _channel
+          .invokeMethod<Map<dynamic, dynamic>>(
+              'getMetrics', <String, dynamic>{'textureId': _textureId});
+      return metrics == null ? null : PlaybackMetrics._fromMap(metrics);
+    } on MissingPluginException {
+      return null;
+    }
+  }
+
+  /// Sends the metrics to [metricsNotifier] every [interval], null to stop.
+  Future<void> setMetricsInterval(Duration? interval) async {
+    if (_textureId == null || _isDisposed) {
+      return;
+    }
+    try {
+      await _channel.invokeMethod<void>(
+        'setMetricsInterval',
+        <String, dynamic>{
+          'textureId': _textureId,
+          'interval': interval?.inMilliseconds ?? 0,
+        },
+      );
+    } on MissingPluginException {
+      // Metrics are not collected on this platform.
+    }
+  }
+
+  static ResolutionSwitchReason _switchReason(int reason) {
+    return reason >= 0 && reason < ResolutionSwitchReason.values.length
+        ? ResolutionSwitchReason.values[reason]
+        : ResolutionSwitchReason.unknown;
+  }
+
+  /// Sets which variants of an adaptive stream may be played.
+  ///
+  /// The change applies from the next segment on without flushing what is
+  /// already buffered, where the format allows it. The variant actually played
+  /// is reported through [VideoPlayerValue.resolutionIndex]. Only supported on
+  /// Android.
+  Future<void> setResolutionPolicy(ResolutionPolicy policy) async {
+    if (!value.initialized || _isDisposed) {
+      return;
+    }
+    const int unbounded = 0x7fffffff;
+    try {
+      await _channel.invokeMethod<void>(
+        'setResolutionPolicy',
+        <String, dynamic>{
+          'textureId': _textureId,
+          'maxBitrate': policy.maxBitrate ?? unbounded,
+          'maxHeight': policy.maxHeight ?? unbounded,
+          'minBitrate': policy.minBitrate ?? 0,
+          'minHeight': policy.minHeight ?? 0,
+          'pinnedTrackIndex': policy.pinnedTrackIndex ?? -1,
+        },
+      );
+    } on MissingPluginException {
+      // Use [switchResolutions] on this platform.
+    }
+  }
+
   ///切换分辨率
   Future<void> switchResolutions(int trackIndex) async {
     if (!value.initialized || _isDisposed) {
       return;
     }
-    await _channel.invokeMethod<void>(
-      'switchResolutions',
-      <String, dynamic>{'textureId': _textureId, 'trackIndex': trackIndex},
-    );
+    try {
+      await _channel.invokeMethod<void>(
+        'switchResolutions',
+        <String, dynamic>{'textureId': _textureId, 'trackIndex': trackIndex},
+      );
+    } on MissingPluginException {
+      // Resolutions can't be switched on this platform.
+    }
   }
 
   ///下载
-  Future<void> download(int trackIndex, String name) async {
+  ///
+  /// Downloads with a higher [priority] are started before lower ones, see
+  /// [configureDownloads].
+  Future<void> download(int trackIndex, String name, {int priority = 0}) async {
     await _channel.invokeMethod<void>(
       'download',
       <String, dynamic>{
         'textureId': _textureId,
         'trackIndex': trackIndex,
-        'name': name
+        'name': name,
+        'priority': priority,
       },
     );
   }
@@ -511,12 +1513,68 @@ class VideoPlayerController extends ValueNotifier<VideoPlayerValue> {
     );
   }
 
+  /// Reports that the video is rendered at [size] logical pixels, so adaptive
+  /// streams select no variant larger than the smallest one covering it.
+  ///
+  /// [VideoPlayer] reports its layout size automatically. Only supported on
+  /// Android.
+  Future<void> setViewportSize(Size size, double devicePixelRatio) async {
+    if (!size.isFinite || size.isEmpty) {
+      return;
+    }
+    final Size pixels = Size((size.width * devicePixelRatio).ceilToDouble(),
+        (size.height * devicePixelRatio).ceilToDouble());
+    if (pixels == _viewportPixels) {
+      return;
+    }
+    _viewportPixels = pixels;
+    // Before creation the size is sent along with 'create'.
+    if (_textureId == null || _isDisposed) {
+      return;
+    }
+    try {
+      await _channel.invokeMethod<void>(
+        'setViewportSize',
+        <String, dynamic>{
+          'textureId': _textureId,
+          'width': pixels.width.toInt(),
+          'height': pixels.height.toInt(),
+        },
+      );
+    } on MissingPluginException {
+      // The platform selects variants by bandwidth only.
+    }
+  }
+
+  /// Tells the platform whether this controller is shown, as done by the
+  /// [VideoPlayer] widget. See [setMaxActiveDecoders].
+  Future<void> setVisible(bool visible) async {
+    if (_textureId == null || _isDisposed) {
+      return;
+    }
+    try {
+      await _channel.invokeMethod<void>(
+        'setVisible',
+        <String, dynamic>{'textureId': _textureId, 'visible': visible},
+      );
+    } on MissingPluginException {
+      // Players are never suspended on this platform.
+    }
+  }
+
   ///设置倍速
+  ///
+  /// May be called before [initialize] completes. A live stream played at a
+  /// speed other than 1.0 stops following [LiveOptions.targetOffset].
   Future<void> setSpeed(double speed) async {
-    if (!value.initialized || _isDisposed) {
+    if (_isDisposed) {
       return null;
     }
     value = value.copyWith(speed: speed);
+    // Before creation the speed is applied once the texture exists.
+    if (_textureId == null) {
+      return null;
+    }
     await _channel.invokeMethod<void>(
       'setSpeed',
       <String, dynamic>{'textureId': _textureId, 'speed': speed},
@@ -547,6 +1605,172 @@ class VideoPlayerController extends ValueNotifier<VideoPlayerValue> {
   }
 }
 
+/// Decodes the binary records sent by BinaryEventChannel.java.
+///
+/// Every record starts with a one byte type and the eight byte texture id,
+/// followed by the payload of that type, all little-endian. The layouts must
+/// be kept in sync with the platform side.
+///
+/// Initialization, completion and errors are records as well, so that they
+/// are applied in order with the frequent events around them. The value
+/// batched so far is committed before each of them.
+class _BinaryEvents {
+  static const int _positionUpdate = 1; // int64 position, int64 buffered
+  static const int _bufferingUpdate = 2; // int64 buffered
+  static const int _bufferingStart = 3;
+  static const int _bufferingEnd = 4;
+  static const int _playStateChanged = 5; // uint8 is playing
+  static const int _resolutionChange = 6; // int32 index, bitrate; uint8 reason
+  static const int _downloadState = 7; // int32 state, float64 progress
+  static const int _initialized = 8; // int64 duration, int32 width, height
+  static const int _completed = 9;
+  static const int _error = 10; // int32 length, UTF-8 message
+
+  static const BasicMessageChannel<ByteData> _channel =
+      BasicMessageChannel<ByteData>(
+          'flutter.io/videoPlayer/binaryEvents', BinaryCodec());
+
+  static final Map<int, VideoPlayerController> _controllers =
+      <int, VideoPlayerController>{};
+  static bool _listening = false;
+
+  static void register(int textureId, VideoPlayerController controller) {
+    if (!_listening) {
+      _listening = true;
+      _channel.setMessageHandler(_handleMessage);
+    }
+    _controllers[textureId] = controller;
+  }
+
+  static void unregister(int textureId, VideoPlayerController controller) {
+    if (_controllers[textureId] == controller) {
+      _controllers.remove(textureId);
+    }
+  }
+
+  static List<DurationRange> _bufferedUntil(int bufferedPosition) {
+    return <DurationRange>[
+      DurationRange(
+          const Duration(), Duration(milliseconds: bufferedPosition)),
+    ];
+  }
+
+  /// Applies a batch of records, notifying each controller's listeners once.
+  static Future<ByteData?> _handleMessage(ByteData? message) async {
+    if (message == null) {
+      return null;
+    }
+    final Map<VideoPlayerController, VideoPlayerValue> values =
+        <VideoPlayerController, VideoPlayerValue>{};
+    int offset = 0;
+    while (offset < message.lengthInBytes) {
+      final int type = message.getUint8(offset);
+      final VideoPlayerController? controller =
+          _controllers[message.getInt64(offset + 1, Endian.little)];
+      offset += 9;
+      VideoPlayerValue? value = controller == null || controller._isDisposed
+          ? null
+          : values[controller] ?? controller.value;
+      switch (type) {
+        case _positionUpdate:
+          value = value?.copyWith(
+              position: Duration(
+                  milliseconds: message.getInt64(offset, Endian.little)),
+              buffered: _bufferedUntil(
+                  message.getInt64(offset + 8, Endian.little)));
+          offset += 16;
+          break;
+        case _bufferingUpdate:
+          value = value?.copyWith(
+              buffered:
+                  _bufferedUntil(message.getInt64(offset, Endian.little)));
+          offset += 8;
+          break;
+        case _bufferingStart:
+          value = value?.copyWith(isBuffering: true);
+          break;
+        case _bufferingEnd:
+          value = value?.copyWith(isBuffering: false);
+          break;
+        case _playStateChanged:
+          final bool isPlaying = message.getUint8(offset) == 1;
+          offset += 1;
+          if (value != null) {
+            controller!._syncTimer(isPlaying);
+            value = value.copyWith(
+                isPlaying: isPlaying,
+                errorDescription: null,
+                forceSetErrorDescription: true);
+          }
+          break;
+        case _resolutionChange:
+          value = value?.copyWith(
+              resolutionIndex: message.getInt32(offset, Endian.little),
+              resolutionBitrate: message.getInt32(offset + 4, Endian.little),
+              resolutionSwitchReason: VideoPlayerController._switchReason(
+                  message.getUint8(offset + 8)));
+          offset += 9;
+          break;
+        case _downloadState:
+          final int state = message.getInt32(offset, Endian.little);
+          final double progress =
+              message.getFloat64(offset + 4, Endian.little);
+          offset += 12;
+          if (value != null) {
+            controller!.downloadNotifier.value =
+                DownloadState(state, progress: progress);
+          }
+          break;
+        case _initialized:
+          final Duration duration =
+              Duration(milliseconds: message.getInt64(offset, Endian.little));
+          final Size size = Size(
+              message.getInt32(offset + 8, Endian.little).toDouble(),
+              message.getInt32(offset + 12, Endian.little).toDouble());
+          offset += 16;
+          if (value != null) {
+            controller!.value = value;
+            values.remove(controller);
+            controller._onInitialized(duration, size);
+            value = null;
+          }
+          break;
+        case _completed:
+          if (value != null) {
+            controller!.value = value;
+            values.remove(controller);
+            controller._onCompleted();
+            value = null;
+          }
+          break;
+        case _error:
+          final int length = message.getInt32(offset, Endian.little);
+          final String errorMessage = utf8.decode(message.buffer
+              .asUint8List(message.offsetInBytes + offset + 4, length));
+          offset += 4 + length;
+          if (value != null) {
+            controller!.value = value;
+            values.remove(controller);
+            controller._onError(
+                PlatformException(code: 'VideoError', message: errorMessage));
+            value = null;
+          }
+          break;
+        default:
+          // An unknown record has an unknown length, drop the rest.
+          offset = message.lengthInBytes;
+      }
+      if (value != null) {
+        values[controller!] = value;
+      }
+    }
+    values.forEach((VideoPlayerController controller, VideoPlayerValue value) {
+      controller.value = value;
+    });
+    return null;
+  }
+}
+
 class _VideoAppLifeCycleObserver extends Object with WidgetsBindingObserver {
   _VideoAppLifeCycleObserver(this._controller);
 
@@ -603,6 +1827,8 @@ class _VideoPlayerState extends State<VideoPlayer> {
 
   late VoidCallback _listener;
   int? _textureId = null;
+  Size? _reportedSize;
+  double? _reportedDevicePixelRatio;
 
   @override
   void initState() {
@@ -611,25 +1837,62 @@ class _VideoPlayerState extends State<VideoPlayer> {
     // Need to listen for initialization events since the actual texture ID
     // becomes available after asynchronous initialization finishes.
     widget.controller.addListener(_listener);
+    // The controller may have been hidden by a widget shown before this one.
+    widget.controller.setVisible(true);
   }
 
   @override
   void didUpdateWidget(VideoPlayer oldWidget) {
     super.didUpdateWidget(oldWidget);
     oldWidget.controller.removeListener(_listener);
+    if (oldWidget.controller != widget.controller) {
+      oldWidget.controller.setVisible(false);
+      widget.controller.setVisible(true);
+      _reportedSize = null;
+    }
     _textureId = widget.controller.textureId;
     widget.controller.addListener(_listener);
   }
 
+  @override
+  void activate() {
+    super.activate();
+    widget.controller.setVisible(true);
+  }
+
   @override
   void deactivate() {
     super.deactivate();
     widget.controller.removeListener(_listener);
+    widget.controller.setVisible(false);
+  }
+
+  /// Reports the layout size after the frame, and only when it changed.
+  void _reportViewportSize(Size size, double devicePixelRatio) {
+    if (size == _reportedSize &&
+        devicePixelRatio == _reportedDevicePixelRatio) {
+      return;
+    }
+    _reportedSize = size;
+    _reportedDevicePixelRatio = devicePixelRatio;
+    WidgetsBinding.instance!.addPostFrameCallback((Duration timeStamp) {
+      if (mounted) {
+        widget.controller.setViewportSize(size, devicePixelRatio);
+      }
+    });
   }
 
   @override
   Widget build(BuildContext context) {
-    return _textureId == null ? Container() : Texture(textureId: _textureId!);
+    return LayoutBuilder(
+      builder: (BuildContext context, BoxConstraints constraints) {
+        _reportViewportSize(constraints.biggest,
+            MediaQuery.maybeOf(context)?.devicePixelRatio ?? 1.0);
+        return _textureId == null
+            ? Container()
+            : Texture(textureId: _textureId!);
+      },
+    );
   }
 }
 
@@ -663,6 +1926,15 @@ class _VideoScrubberState extends State<_VideoScrubber> {
 
   VideoPlayerController get controller => widget.controller;
 
+  /// Ends a drag, whether it completed or was cancelled.
+  void _endScrubbing() {
+    controller.setScrubbing(false);
+    if (_controllerWasPlaying) {
+      controller.play();
+    }
+    _controllerWasPlaying = false;
+  }
+
   @override
   Widget build(BuildContext context) {
     void seekToRelativePosition(Offset globalPosition) {
@@ -685,6 +1957,7 @@ class _VideoScrubberState extends State<_VideoScrubber> {
         if (_controllerWasPlaying) {
           controller.pause();
         }
+        controller.setScrubbing(true);
       },
       onHorizontalDragUpdate: (DragUpdateDetails details) {
         if (!controller.value.initialized) {
@@ -693,10 +1966,9 @@ class _VideoScrubberState extends State<_VideoScrubber> {
         seekToRelativePosition(details.globalPosition);
       },
       onHorizontalDragEnd: (DragEndDetails details) {
-        if (_controllerWasPlaying) {
-          controller.play();
-        }
+        _endScrubbing();
       },
+      onHorizontalDragCancel: _endScrubbing,
       onTapDown: (TapDownDetails details) {
         if (!controller.value.initialized) {
           return;
@@ -1,5 +1,8 @@
 import 'dart:async';
+import 'dart:convert';
+import 'dart:typed_data';
 import 'package:flutter/foundation.dart';
+import 'package:flutter/services.dart';
 import 'package:flutter/src/services/system_chrome.dart';
 import 'package:flutter/widgets.dart';
 import 'package:video_player/video_player.dart';
@@ -24,13 +27,45 @@ class FakeController extends ValueNotifier<VideoPlayerValue>
   @override
   String get package => '';
   @override
+  Duration get positionUpdateInterval => const Duration(milliseconds: 500);
+  @override
+  BufferOptions? get bufferOptions => null;
+  @override
+  LiveOptions? get liveOptions => null;
+  @override
+  StartupPolicy get startupPolicy => StartupPolicy.balanced;
+  @override
+  String? get contentId => null;
+  @override
   Future<Duration> get position async => value.position;
 
   @override
-  Future<void> seekTo(Duration moment) async {}
+  Future<void> seekTo(Duration moment,
+      {SeekMode mode = SeekMode.exact}) async {}
+  final List<bool> scrubbingCalls = <bool>[];
+
+  @override
+  Future<void> setScrubbing(bool scrubbing) async {
+    scrubbingCalls.add(scrubbing);
+  }
+  @override
+  Future<void> setVisible(bool visible) async {}
   @override
   Future<void> setVolume(double volume) async {}
   @override
+  Future<void> setPlaylist(List<String> dataSources,
+      {int startIndex = 0}) async {}
+  @override
+  Future<void> addToPlaylist(String dataSource, {int? index}) async {}
+  @override
+  Future<void> removeFromPlaylist(int index) async {}
+  @override
+  Future<void> skipTo(int index) async {}
+  @override
+  Future<void> setResolutionPolicy(ResolutionPolicy policy) async {}
+  @override
+  Future<void> setViewportSize(Size size, double devicePixelRatio) async {}
+  @override
   Future<void> initialize() async {}
   @override
   Future<void> pause() async {}
@@ -42,6 +77,15 @@ class FakeController extends ValueNotifier<VideoPlayerValue>
   @override
   late ValueNotifier<DownloadState> downloadNotifier;
 
+  @override
+  late ValueNotifier<PlaybackMetrics?> metricsNotifier;
+
+  @override
+  Future<PlaybackMetrics?> getMetrics() async => null;
+
+  @override
+  Future<void> setMetricsInterval(Duration? interval) async {}
+
   @override
   Future<void> changeScreenOrientation(DeviceOrientation orientation) {
     // TODO: implement changeScreenOrientation
@@ -49,7 +93,7 @@ class FakeController extends ValueNotifier<VideoPlayerValue>
   }
 
   @override
-  Future<void> download(int trackIndex, String name) {
+  Future<void> download(int trackIndex, String name, {int priority = 0}) {
     // TODO: implement download
     throw UnimplementedError();
   }
@@ -107,4 +151,299 @@ void main() {
         ),
         findsOneWidget);
   });
+
+  group('scrubbing', () {
+    FakeController initializedController() {
+      final FakeController controller = FakeController();
+      controller.textureId = 1;
+      controller.value = controller.value.copyWith(
+        duration: const Duration(seconds: 10),
+      );
+      return controller;
+    }
+
+    Future<void> pumpIndicator(
+        WidgetTester tester, FakeController controller) async {
+      await tester.pumpWidget(Directionality(
+        textDirection: TextDirection.ltr,
+        child: VideoProgressIndicator(controller, allowScrubbing: true),
+      ));
+    }
+
+    testWidgets('a drag scrubs until it ends', (WidgetTester tester) async {
+      final FakeController controller = initializedController();
+      await pumpIndicator(tester, controller);
+
+      await tester.drag(
+          find.byType(VideoProgressIndicator), const Offset(100, 0));
+      await tester.pump();
+
+      expect(controller.scrubbingCalls, <bool>[true, false]);
+    });
+
+    testWidgets('a cancelled drag ends scrubbing',
+        (WidgetTester tester) async {
+      final FakeController controller = initializedController();
+      await pumpIndicator(tester, controller);
+
+      final TestGesture gesture = await tester.startGesture(
+          tester.getCenter(find.byType(VideoProgressIndicator)));
+      await gesture.moveBy(const Offset(100, 0));
+      await gesture.cancel();
+      await tester.pump();
+
+      expect(controller.scrubbingCalls.first, isTrue);
+      expect(controller.scrubbingCalls.last, isFalse);
+    });
+
+    testWidgets('no scrubbing before initialization',
+        (WidgetTester tester) async {
+      final FakeController controller = FakeController();
+      controller.textureId = 1;
+      await pumpIndicator(tester, controller);
+
+      await tester.drag(
+          find.byType(VideoProgressIndicator), const Offset(100, 0));
+      await tester.pump();
+
+      expect(controller.scrubbingCalls, isNot(contains(true)));
+    });
+  });
+
+  group('platform channel', () {
+    const MethodChannel channel = MethodChannel('flutter.io/videoPlayer');
+    final List<MethodCall> log = <MethodCall>[];
+    int nextTextureId = 1;
+
+    setUp(() {
+      log.clear();
+      channel.setMockMethodCallHandler((MethodCall call) async {
+        log.add(call);
+        switch (call.method) {
+          case 'create':
+            final int textureId = nextTextureId++;
+            MethodChannel('flutter.io/videoPlayer/videoEvents$textureId')
+                .setMockMethodCallHandler((MethodCall call) async => null);
+            return <String, dynamic>{'textureId': textureId};
+          case 'position':
+            return 0;
+        }
+        return null;
+      });
+    });
+
+    tearDown(() {
+      channel.setMockMethodCallHandler(null);
+      VideoPlayerController.useBinaryEvents = false;
+    });
+
+    MethodCall lastCall(String method) =>
+        log.lastWhere((MethodCall call) => call.method == method);
+
+    test('configurePlayerPool sends its arguments', () async {
+      await VideoPlayerController.configurePlayerPool(
+          maxSize: 4, idleTimeout: const Duration(seconds: 10));
+
+      expect(lastCall('configurePlayerPool').arguments,
+          <String, dynamic>{'maxSize': 4, 'idleTimeout': 10000});
+    });
+
+    test('preload sends the content ids by uri', () async {
+      await VideoPlayerController.preload(
+          <String>['https://example.com/a.mp4'],
+          contentIds: <String, String>{'https://example.com/a.mp4': 'a'});
+
+      expect(lastCall('preload').arguments, <String, dynamic>{
+        'uris': <String>['https://example.com/a.mp4'],
+        'maxBytes': 2 * 1024 * 1024,
+        'contentIds': <String, String>{'https://example.com/a.mp4': 'a'},
+      });
+    });
+
+    test('configureManifestCache sends its arguments', () async {
+      await VideoPlayerController.configureManifestCache(
+          ttl: const Duration(seconds: 5));
+
+      expect(lastCall('configureManifestCache').arguments,
+          <String, dynamic>{'ttl': 5000});
+    });
+
+    test('create leaves unset live options out', () async {
+      final VideoPlayerController controller = VideoPlayerController.network(
+        'https://example.com/live.m3u8',
+        liveOptions: const LiveOptions(
+          targetOffset: Duration(seconds: 4),
+          maxPlaybackSpeed: 1.05,
+        ),
+      );
+      // Never completes, no player sends initialized.
+      controller.initialize();
+      await Future<void>.delayed(Duration.zero);
+
+      expect(lastCall('create').arguments['liveOptions'], <String, dynamic>{
+        'targetOffsetMs': 4000,
+        'maxPlaybackSpeed': 1.05,
+      });
+      await controller.dispose();
+    });
+
+    test('setMaxActiveDecoders sends its arguments', () async {
+      await VideoPlayerController.setMaxActiveDecoders(3);
+
+      expect(lastCall('setMaxActiveDecoders').arguments,
+          <String, dynamic>{'maxActive': 3});
+    });
+
+    test('configureCacheKeys sends its arguments', () async {
+      await VideoPlayerController.configureCacheKeys(
+          ignoredQueryParameters: <String>['token']);
+
+      expect(lastCall('configureCacheKeys').arguments, <String, dynamic>{
+        'ignoredQueryParameters': <String>['token']
+      });
+    });
+
+    test('downloadStates sends the content ids by uri', () async {
+      await VideoPlayerController.downloadStates(
+          <String>['https://example.com/a.m3u8'],
+          contentIds: <String, String>{'https://example.com/a.m3u8': 'a'});
+
+      expect(lastCall('downloadStates').arguments, <String, dynamic>{
+        'uris': <String>['https://example.com/a.m3u8'],
+        'contentIds': <String, String>{'https://example.com/a.m3u8': 'a'},
+      });
+    });
+
+    test('pinDownload sends the content id only when given', () async {
+      await VideoPlayerController.pinDownload(
+          'https://example.com/a.m3u8', true);
+      expect(lastCall('pinDownload').arguments, <String, dynamic>{
+        'uri': 'https://example.com/a.m3u8',
+        'pinned': true,
+      });
+
+      await VideoPlayerController.pinDownload(
+          'https://example.com/a.m3u8', false,
+          contentId: 'movie-1');
+      expect(lastCall('pinDownload').arguments, <String, dynamic>{
+        'uri': 'https://example.com/a.m3u8',
+        'pinned': false,
+        'contentId': 'movie-1',
+      });
+    });
+
+    group('binary events', () {
+      late Future<void> initializing;
+
+      Future<VideoPlayerController> createController() async {
+        VideoPlayerController.useBinaryEvents = true;
+        final VideoPlayerController controller =
+            VideoPlayerController.network('https://example.com/video.mp4');
+        initializing = controller.initialize();
+        // Texture ids start at 1, 0 stands for none yet.
+        while (controller.textureId == 0) {
+          await Future<void>.delayed(Duration.zero);
+        }
+        return controller;
+      }
+
+      ByteData record(int type, int textureId, int payloadSize) {
+        final ByteData record = ByteData(9 + payloadSize);
+        record.setUint8(0, type);
+        record.setInt64(1, textureId, Endian.little);
+        return record;
+      }
+
+      ByteData concat(List<ByteData> records) {
+        final BytesBuilder builder = BytesBuilder();
+        for (final ByteData record in records) {
+          builder.add(record.buffer.asUint8List());
+        }
+        return ByteData.sublistView(builder.toBytes());
+      }
+
+      Future<void> deliver(List<ByteData> records) async {
+        await ServicesBinding.instance!.defaultBinaryMessenger
+            .handlePlatformMessage('flutter.io/videoPlayer/binaryEvents',
+                concat(records), (ByteData? reply) {});
+        await Future<void>.delayed(Duration.zero);
+      }
+
+      test('decode value records', () async {
+        final VideoPlayerController controller = await createController();
+        final int id = controller.textureId;
+
+        final ByteData position = record(1, id, 16)
+          ..setInt64(9, 1500, Endian.little)
+          ..setInt64(17, 4000, Endian.little);
+        await deliver(<ByteData>[position, record(3, id, 0)]);
+        expect(controller.value.position, const Duration(milliseconds: 1500));
+        expect(controller.value.buffered.single.end,
+            const Duration(milliseconds: 4000));
+        expect(controller.value.isBuffering, isTrue);
+
+        final ByteData buffering = record(2, id, 8)
+          ..setInt64(9, 6000, Endian.little);
+        await deliver(<ByteData>[buffering, record(4, id, 0)]);
+        expect(controller.value.buffered.single.end,
+            const Duration(milliseconds: 6000));
+        expect(controller.value.isBuffering, isFalse);
+
+        await deliver(<ByteData>[record(5, id, 1)..setUint8(9, 1)]);
+        expect(controller.value.isPlaying, isTrue);
+        await deliver(<ByteData>[record(5, id, 1)..setUint8(9, 0)]);
+        expect(controller.value.isPlaying, isFalse);
+
+        final ByteData resolution = record(6, id, 9)
+          ..setInt32(9, 2, Endian.little)
+          ..setInt32(13, 800000, Endian.little)
+          ..setUint8(17, 0);
+        await deliver(<ByteData>[resolution]);
+        expect(controller.value.resolutionIndex, 2);
+        expect(controller.value.resolutionBitrate, 800000);
+
+        final ByteData download = record(7, id, 12)
+          ..setInt32(9, DownloadState.DOWNLOADING, Endian.little)
+          ..setFloat64(13, 42.5, Endian.little);
+        await deliver(<ByteData>[download]);
+        expect(controller.downloadNotifier.value.state,
+            DownloadState.DOWNLOADING);
+        expect(controller.downloadNotifier.value.progress, 42.5);
+
+        await controller.dispose();
+      });
+
+      test('decode lifecycle records in order', () async {
+        final VideoPlayerController controller = await createController();
+        final int id = controller.textureId;
+
+        final ByteData position = record(1, id, 16)
+          ..setInt64(9, 0, Endian.little)
+          ..setInt64(17, 2000, Endian.little);
+        final ByteData init = record(8, id, 16)
+          ..setInt64(9, 10000, Endian.little)
+          ..setInt32(17, 1280, Endian.little)
+          ..setInt32(21, 720, Endian.little);
+        await deliver(<ByteData>[position, init]);
+        await initializing;
+        expect(controller.value.duration, const Duration(seconds: 10));
+        expect(controller.value.size, const Size(1280, 720));
+        expect(controller.value.buffered.single.end,
+            const Duration(milliseconds: 2000));
+
+        await deliver(<ByteData>[record(9, id, 0)]);
+        expect(controller.value.isPlaying, isFalse);
+        expect(controller.value.position, const Duration(seconds: 10));
+
+        final List<int> message = utf8.encode('Source error');
+        final ByteData error = record(10, id, 4 + message.length)
+          ..setInt32(9, message.length, Endian.little);
+        error.buffer.asUint8List().setRange(13, 13 + message.length, message);
+        await deliver(<ByteData>[error]);
+        expect(controller.value.errorDescription, 'Source error');
+
+        await controller.dispose();
+      });
+    });
+  });
 }